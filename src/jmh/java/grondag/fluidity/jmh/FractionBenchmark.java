@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import grondag.fluidity.api.fraction.Fraction;
+import grondag.fluidity.api.fraction.MutableFraction;
+
+/**
+ * Baseline throughput and allocation numbers for the fraction math layer.<p>
+ *
+ * Each invocation operates on one pair of operands drawn from a fixed, pre-generated
+ * pool so that results reflect a realistic mix of values instead of a single hot constant.
+ * Run with the {@code gc} profiler (enabled by default in the build) to see allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FractionBenchmark {
+	private static final int POOL_SIZE = 1024;
+	private static final int POOL_MASK = POOL_SIZE - 1;
+
+	/**
+	 * Comma-separated divisors used to generate operands. Single values model
+	 * stores that only ever see one resolution; lists model mixed traffic.
+	 */
+	@Param({"1", "3", "4", "1000", "81000", "7919,104729", "1,3,4,9,1000,81000"})
+	public String divisors;
+
+	private final Fraction[] left = new Fraction[POOL_SIZE];
+	private final Fraction[] right = new Fraction[POOL_SIZE];
+	private final long[] units = new long[POOL_SIZE];
+	private final MutableFraction acc = new MutableFraction();
+	private int index;
+
+	@Setup
+	public void setup() {
+		final String[] tokens = divisors.split(",");
+		final long[] d = new long[tokens.length];
+
+		for (int i = 0; i < tokens.length; i++) {
+			d[i] = Long.parseLong(tokens[i].trim());
+		}
+
+		// fixed seed so runs are comparable
+		final Random rand = new Random(0x5EEDL);
+
+		for (int i = 0; i < POOL_SIZE; i++) {
+			left[i] = randomFraction(rand, d[rand.nextInt(d.length)]);
+			right[i] = randomFraction(rand, d[rand.nextInt(d.length)]);
+			units[i] = d[rand.nextInt(d.length)];
+		}
+
+		index = 0;
+	}
+
+	private static Fraction randomFraction(Random rand, long divisor) {
+		final long whole = rand.nextInt(1000);
+		final long numerator = divisor == 1 ? 0 : (long) (rand.nextDouble() * divisor);
+		return Fraction.of(whole, numerator, divisor);
+	}
+
+	private int next() {
+		return index++ & POOL_MASK;
+	}
+
+	@Benchmark
+	public Fraction add() {
+		final int i = next();
+		return acc.set(left[i]).add(right[i]);
+	}
+
+	@Benchmark
+	public Fraction subtract() {
+		final int i = next();
+		return acc.set(left[i]).subtract(right[i]);
+	}
+
+	@Benchmark
+	public Fraction multiply() {
+		final int i = next();
+		return acc.set(left[i]).multiply(right[i]);
+	}
+
+	@Benchmark
+	public int compare() {
+		final int i = next();
+		return left[i].compareTo(right[i]);
+	}
+
+	@Benchmark
+	public Fraction roundDown() {
+		final int i = next();
+		acc.set(left[i]).roundDown(units[i]);
+		return acc;
+	}
+
+	@Benchmark
+	public long toLong() {
+		final int i = next();
+		return left[i].toLong(units[i]);
+	}
+
+	@Benchmark
+	public Fraction toImmutable() {
+		final int i = next();
+		return acc.set(left[i]).toImmutable();
+	}
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import grondag.fluidity.api.transact.Transaction;
+import grondag.fluidity.api.transact.TransactionContext;
+import grondag.fluidity.api.transact.TransactionParticipant;
+
+/**
+ * Cost of a typical nested transaction: open a root, enlist participants, open a nested
+ * transaction that enlists the same participants again, then commit both.<p>
+ *
+ * Participant counts cover the common case (one to four) and counts past the point where
+ * participant lookup switches to a hash index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransactionBenchmark {
+	@Param({"1", "2", "4", "16"})
+	public int participantCount;
+
+	private Participant[] participants;
+
+	@Setup
+	public void setup() {
+		participants = new Participant[participantCount];
+
+		for (int i = 0; i < participantCount; i++) {
+			participants[i] = new Participant();
+		}
+	}
+
+	@Benchmark
+	public int nestedCommit() {
+		final Participant[] participants = this.participants;
+
+		try (Transaction root = Transaction.open()) {
+			for (final Participant p : participants) {
+				root.enlist(p);
+				++p.value;
+			}
+
+			try (Transaction nested = Transaction.open()) {
+				for (final Participant p : participants) {
+					nested.enlist(p);
+					++p.value;
+				}
+
+				nested.commit();
+			}
+
+			root.commit();
+		}
+
+		return participants[0].value;
+	}
+
+	@Benchmark
+	public int nestedRollback() {
+		final Participant[] participants = this.participants;
+
+		try (Transaction root = Transaction.open()) {
+			for (final Participant p : participants) {
+				root.enlist(p);
+				++p.value;
+			}
+
+			try (Transaction nested = Transaction.open()) {
+				for (final Participant p : participants) {
+					nested.enlist(p);
+					++p.value;
+				}
+			}
+
+			root.commit();
+		}
+
+		return participants[0].value;
+	}
+
+	private static class Participant implements TransactionParticipant, TransactionParticipant.TransactionDelegate {
+		private int value;
+
+		private final Consumer<TransactionContext> onClose = context -> {
+			if (!context.isCommited()) {
+				value = context.<Integer>getState();
+			}
+		};
+
+		@Override
+		public TransactionDelegate getTransactionDelegate() {
+			return this;
+		}
+
+		@Override
+		public Consumer<TransactionContext> prepareRollback(TransactionContext context) {
+			context.setState(value);
+			return onClose;
+		}
+	}
+}
@@ -25,13 +25,19 @@ import net.minecraft.potion.Potions;
 
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.event.server.ServerStartCallback;
+import net.fabricmc.fabric.api.event.server.ServerStopCallback;
 import net.fabricmc.fabric.api.event.server.ServerTickCallback;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 
 import grondag.fluidity.api.device.ItemActionHelper;
+import grondag.fluidity.api.fraction.FractionCache;
+import grondag.fluidity.base.synch.ArticleDictionary;
 import grondag.fluidity.base.synch.ItemStorageInteractionC2S;
 import grondag.fluidity.impl.MultiBlockManagerImpl;
 import grondag.fluidity.impl.TransactionImpl;
+import grondag.fluidity.impl.TransactionMetricsImpl;
+import grondag.fluidity.impl.TransactionQueueImpl;
 import grondag.fluidity.impl.article.ArticleTypeImpl;
 
 @Internal
@@ -46,15 +52,22 @@ public class Fluidity implements ModInitializer {
 	@Override
 	public void onInitialize() {
 		FluidityConfig.init();
+		FractionCache.configure(FluidityConfig.FRACTION_CACHE_MAX_WHOLE);
+		TransactionMetricsImpl.INSTANCE.configure(FluidityConfig.TRANSACTION_METRICS, FluidityConfig.TRANSACTION_METRICS_TICKS);
 		ArticleTypeImpl.init();
 		ServerTickCallback.EVENT.register(MultiBlockManagerImpl::tick);
+		ServerTickCallback.EVENT.register(s -> TransactionQueueImpl.tick());
+		ServerTickCallback.EVENT.register(s -> TransactionMetricsImpl.INSTANCE.onTick());
 
 		ServerStartCallback.EVENT.register(s -> {
 			TransactionImpl.setServerThread(s);
 			MultiBlockManagerImpl.start(s);
 		});
 
+		ServerStopCallback.EVENT.register(s -> TransactionQueueImpl.cancelAll());
+
 		ServerPlayNetworking.registerGlobalReceiver(ItemStorageInteractionC2S.ID, ItemStorageInteractionC2S::accept);
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> ArticleDictionary.onDisconnect(handler));
 
 		ItemActionHelper.addPotionActions(Fluids.WATER, Potions.WATER);
 		ItemActionHelper.addItemActions(Fluids.WATER, Items.BUCKET, Items.WATER_BUCKET);
@@ -18,6 +18,7 @@ package grondag.fluidity;
 import org.jetbrains.annotations.ApiStatus.Internal;
 
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 
 import grondag.fluidity.base.synch.BulkStorageClientDelegate;
@@ -33,9 +34,18 @@ public class FluidityClient implements ClientModInitializer {
 		ClientPlayNetworking.registerGlobalReceiver(DiscreteStorageUpdateS2C.ID_FULL_REFRESH, DiscreteStorageClientDelegate.INSTANCE::handleFullRefresh);
 		ClientPlayNetworking.registerGlobalReceiver(DiscreteStorageUpdateS2C.ID_UPDATE, DiscreteStorageClientDelegate.INSTANCE::handleUpdate);
 		ClientPlayNetworking.registerGlobalReceiver(DiscreteStorageUpdateS2C.ID_UPDATE_WITH_CAPACITY, DiscreteStorageClientDelegate.INSTANCE::handleUpdateWithCapacity);
+		ClientPlayNetworking.registerGlobalReceiver(DiscreteStorageUpdateS2C.ID_FULL_REFRESH_COMPACT, DiscreteStorageClientDelegate.INSTANCE::handleFullRefreshCompact);
+		ClientPlayNetworking.registerGlobalReceiver(DiscreteStorageUpdateS2C.ID_UPDATE_COMPACT, DiscreteStorageClientDelegate.INSTANCE::handleUpdateCompact);
+		ClientPlayNetworking.registerGlobalReceiver(DiscreteStorageUpdateS2C.ID_UPDATE_WITH_CAPACITY_COMPACT, DiscreteStorageClientDelegate.INSTANCE::handleUpdateWithCapacityCompact);
 
 		ClientPlayNetworking.registerGlobalReceiver(BulkStorageUpdateS2C.ID_FULL_REFRESH, BulkStorageClientDelegate.INSTANCE::handleFullRefresh);
 		ClientPlayNetworking.registerGlobalReceiver(BulkStorageUpdateS2C.ID_UPDATE, BulkStorageClientDelegate.INSTANCE::handleUpdate);
 		ClientPlayNetworking.registerGlobalReceiver(BulkStorageUpdateS2C.ID_UPDATE_WITH_CAPACITY, BulkStorageClientDelegate.INSTANCE::handleUpdateWithCapacity);
+		ClientPlayNetworking.registerGlobalReceiver(BulkStorageUpdateS2C.ID_FULL_REFRESH_COMPACT, BulkStorageClientDelegate.INSTANCE::handleFullRefreshCompact);
+		ClientPlayNetworking.registerGlobalReceiver(BulkStorageUpdateS2C.ID_UPDATE_COMPACT, BulkStorageClientDelegate.INSTANCE::handleUpdateCompact);
+		ClientPlayNetworking.registerGlobalReceiver(BulkStorageUpdateS2C.ID_UPDATE_WITH_CAPACITY_COMPACT, BulkStorageClientDelegate.INSTANCE::handleUpdateWithCapacityCompact);
+
+		ClientPlayConnectionEvents.DISCONNECT.register(DiscreteStorageClientDelegate.INSTANCE::handleDisconnect);
+		ClientPlayConnectionEvents.DISCONNECT.register(BulkStorageClientDelegate.INSTANCE::handleDisconnect);
 	}
 }
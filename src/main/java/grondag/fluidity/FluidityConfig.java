@@ -25,6 +25,9 @@ import org.jetbrains.annotations.ApiStatus.Internal;
 
 import net.fabricmc.loader.api.FabricLoader;
 
+import grondag.fluidity.api.fraction.FractionCache;
+import grondag.fluidity.impl.TransactionMetricsImpl;
+
 @Internal
 public class FluidityConfig  {
 	private FluidityConfig() {}
@@ -32,6 +35,10 @@ public class FluidityConfig  {
 	public static final boolean TRACE_DEVICE_CONNECTIONS;
 	// TODO: use it or remove
 	public static final int PER_TICK_BUDGET_MILLISECONDS;
+	public static final int FRACTION_CACHE_MAX_WHOLE;
+	public static final int TRANSACTION_LOCK_TIMEOUT_MILLISECONDS;
+	public static final boolean TRANSACTION_METRICS;
+	public static final int TRANSACTION_METRICS_TICKS;
 
 	static void init() {
 		// NOOP - loads
@@ -56,6 +63,10 @@ public class FluidityConfig  {
 
 		TRACE_DEVICE_CONNECTIONS = properties.computeIfAbsent("trace_device_connections", (a) -> "false").equals("true");
 		PER_TICK_BUDGET_MILLISECONDS = readInteger(properties, "per_tick_budget_milliseconds", 10);
+		FRACTION_CACHE_MAX_WHOLE = Math.max(0, readInteger(properties, "fraction_cache_max_whole", FractionCache.DEFAULT_MAX_WHOLE));
+		TRANSACTION_LOCK_TIMEOUT_MILLISECONDS = Math.max(0, readInteger(properties, "transaction_lock_timeout_milliseconds", 50));
+		TRANSACTION_METRICS = properties.computeIfAbsent("transaction_metrics", (a) -> "false").equals("true");
+		TRANSACTION_METRICS_TICKS = Math.max(1, readInteger(properties, "transaction_metrics_ticks", TransactionMetricsImpl.DEFAULT_RETAINED_TICKS));
 
 		try (FileOutputStream stream = new FileOutputStream(configFile)) {
 			properties.store(stream, "Fluidity properties file");
@@ -202,6 +202,18 @@ public interface Article {
 	 */
 	String getTranslationKey();
 
+	/**
+	 * Dense integer identifier for this article, unique among articles that are still referenced.
+	 * Identifiers of tagged articles that are no longer referenced are reused, so they are only
+	 * meaningful for the current session and must not be saved or sent over the network.<p>
+	 *
+	 * Intended as a key for primitive collections, which must hold a reference to the article
+	 * for as long as they use its identifier.
+	 *
+	 * @return Identifier for this article, zero for {@link #NOTHING}.
+	 */
+	int id();
+
 	/**
 	 * Deserialize an instance previously serialized with {@link #toTag()}
 	 *
@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.api.fraction;
+
+import java.math.BigInteger;
+
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.network.PacketByteBuf;
+
+/**
+ * Mutable quantity with a fixed resolution, stored as a single {@code long} count of units.<p>
+ *
+ * Meant for stores and devices that only ever see one resolution - 81000 droplets per
+ * bucket, for example. Arithmetic is plain long math with no normalization or GCD.<p>
+ *
+ * Conversion to {@link Fraction} is always lossless. Conversion from {@link Fraction}
+ * is lossless when the fraction divisor evenly divides {@link #resolution()}, which
+ * can be checked with {@link #canRepresent(Fraction)}.
+ */
+@Experimental
+public final class FixedFraction implements Comparable<FixedFraction> {
+	private final long resolution;
+	private long units;
+
+	/**
+	 * Constructs a new instance with value of zero.
+	 *
+	 * @param resolution number of units in one whole. Must be >= 1.
+	 */
+	public FixedFraction(long resolution) {
+		this(0, resolution);
+	}
+
+	/**
+	 * @param units number of units - each unit is {@code 1 / resolution}
+	 * @param resolution number of units in one whole. Must be >= 1.
+	 */
+	public FixedFraction(long units, long resolution) {
+		validate(resolution);
+		this.resolution = resolution;
+		this.units = units;
+	}
+
+	/**
+	 * @param value initial value - must be representable at the given resolution
+	 * @param resolution number of units in one whole. Must be >= 1.
+	 */
+	public FixedFraction(Fraction value, long resolution) {
+		this(resolution);
+		set(value);
+	}
+
+	/**
+	 * Number of units in one whole. Never changes for a given instance.
+	 *
+	 * @return number of units in one whole
+	 */
+	public long resolution() {
+		return resolution;
+	}
+
+	/**
+	 * Current value expressed in units of {@code 1 / resolution}.
+	 *
+	 * @return current value in units
+	 */
+	public long units() {
+		return units;
+	}
+
+	/**
+	 * The whole-number portion of this value, with the same sign conventions as {@link Fraction#whole()}.
+	 *
+	 * @return the whole-number portion of this value
+	 */
+	public long whole() {
+		return units / resolution;
+	}
+
+	/**
+	 * The fractional portion of this value in units, with the same sign conventions as {@link Fraction#numerator()}.
+	 * Will always be less than {@link #resolution()} in absolute value.
+	 *
+	 * @return fractional portion of this value in units
+	 */
+	public long numerator() {
+		return units % resolution;
+	}
+
+	public FixedFraction set(long units) {
+		this.units = units;
+		return this;
+	}
+
+	public FixedFraction set(FixedFraction template) {
+		units = template.resolution == resolution ? template.units : convert(template.units, template.resolution, resolution);
+		return this;
+	}
+
+	/**
+	 * Sets this instance to the given value.
+	 *
+	 * @param value new value
+	 * @throws IllegalArgumentException if the value cannot be represented at this resolution
+	 */
+	public FixedFraction set(Fraction value) {
+		if (!canRepresent(value)) {
+			throw new IllegalArgumentException(String.format("Fraction %s cannot be represented with resolution %d", value, resolution));
+		}
+
+		units = toUnits(value, resolution);
+		return this;
+	}
+
+	/**
+	 * Sets this instance to the largest value (in absolute terms) that is not greater than the
+	 * absolute value of the given fraction. Equivalent to {@link #set(Fraction)} when the value
+	 * can be represented.
+	 *
+	 * @param value new value, possibly truncated
+	 */
+	public FixedFraction setTruncated(Fraction value) {
+		units = toUnits(value, resolution);
+		return this;
+	}
+
+	public FixedFraction add(long units) {
+		this.units += units;
+		return this;
+	}
+
+	public FixedFraction subtract(long units) {
+		this.units -= units;
+		return this;
+	}
+
+	public FixedFraction add(FixedFraction val) {
+		units += val.resolution == resolution ? val.units : convert(val.units, val.resolution, resolution);
+		return this;
+	}
+
+	public FixedFraction subtract(FixedFraction val) {
+		units -= val.resolution == resolution ? val.units : convert(val.units, val.resolution, resolution);
+		return this;
+	}
+
+	public FixedFraction multiply(long factor) {
+		units *= factor;
+		return this;
+	}
+
+	public FixedFraction negate() {
+		units = -units;
+		return this;
+	}
+
+	public boolean isZero() {
+		return units == 0;
+	}
+
+	public boolean isNegative() {
+		return units < 0;
+	}
+
+	/**
+	 * True when the given fraction can be converted to this resolution without loss.
+	 *
+	 * @param value fraction to be tested
+	 * @return {@code true} if the fraction divisor evenly divides {@link #resolution()}
+	 */
+	public boolean canRepresent(Fraction value) {
+		return canRepresent(value, resolution);
+	}
+
+	/**
+	 * Returns the number of units of the given divisor that is less than or equal to this value.
+	 * Same semantics as {@link Fraction#toLong(long)}.
+	 *
+	 * @param divisor Fraction of one that counts as 1 in the result. Must be >= 1.
+	 * @return Number of units within current value.
+	 */
+	public long toLong(long divisor) {
+		if (divisor < 1) {
+			throw new IllegalArgumentException("FixedFraction divisor must be >= 1");
+		}
+
+		return divisor == resolution ? units : convert(units, resolution, divisor);
+	}
+
+	/**
+	 * Returns a new immutable fraction with the same value as this instance.
+	 *
+	 * @return new immutable fraction equal to this value
+	 */
+	public Fraction toFraction() {
+		return Fraction.of(whole(), numerator(), resolution);
+	}
+
+	/**
+	 * Non-allocating version of {@link #toFraction()}.
+	 *
+	 * @param target mutable fraction to receive the value of this instance
+	 * @return the target
+	 */
+	public MutableFraction toFraction(MutableFraction target) {
+		return setFraction(target, units, resolution);
+	}
+
+	public double toDouble() {
+		return (double) units / (double) resolution;
+	}
+
+	@Override
+	public int compareTo(FixedFraction o) {
+		if (o.resolution == resolution) {
+			return Long.compare(units, o.units);
+		} else {
+			final int result = Long.compare(whole(), o.whole());
+			return result == 0 ? Fraction.compareProducts(numerator(), o.resolution, o.numerator(), resolution) : result;
+		}
+	}
+
+	public boolean isLessThan(FixedFraction other) {
+		return compareTo(other) < 0;
+	}
+
+	public boolean isGreaterThan(FixedFraction other) {
+		return compareTo(other) > 0;
+	}
+
+	@Override
+	public boolean equals(Object val) {
+		if (val == null || !(val instanceof FixedFraction)) {
+			return false;
+		}
+
+		return compareTo((FixedFraction) val) == 0;
+	}
+
+	/**
+	 * Hashes the reduced value, so that instances equal at different resolutions have the same hash.
+	 */
+	@Override
+	public int hashCode() {
+		final long numerator = numerator();
+
+		if (numerator == 0) {
+			return Long.hashCode(whole());
+		}
+
+		final long gcd = Fraction.gcdOf(Math.abs(numerator), resolution);
+		return Long.hashCode(whole()) ^ Long.hashCode(numerator / gcd * 31 + resolution / gcd);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d / %d, approx: %f", units, resolution, toDouble());
+	}
+
+	/**
+	 * Serializes the current value in an NBT compound tag. Resolution is saved
+	 * so that values can be rescaled if a store is reloaded at a different resolution.
+	 *
+	 * @param tag NBT tag to contain serialized data
+	 */
+	public void writeTag(NbtCompound tag) {
+		tag.putLong("units", units);
+		tag.putLong("resolution", resolution);
+	}
+
+	/**
+	 * Reads a value previously saved via {@link #writeTag(NbtCompound)}, truncating
+	 * if the saved resolution cannot be represented at this resolution.
+	 *
+	 * @param tag NBT tag containing serialized data
+	 */
+	public void readTag(NbtCompound tag) {
+		final long savedResolution = Math.max(1, tag.getLong("resolution"));
+		final long savedUnits = tag.getLong("units");
+		units = savedResolution == resolution ? savedUnits : convert(savedUnits, savedResolution, resolution);
+	}
+
+	public void writeBuffer(PacketByteBuf buffer) {
+		buffer.writeVarLong(units);
+	}
+
+	public void readBuffer(PacketByteBuf buffer) {
+		units = buffer.readVarLong();
+	}
+
+	private static void validate(long resolution) {
+		if (resolution < 1) {
+			throw new IllegalArgumentException("FixedFraction resolution must be >= 1");
+		}
+	}
+
+	/**
+	 * @param value fraction to be tested
+	 * @param resolution target resolution
+	 * @return {@code true} if the fraction can be converted to the given resolution without loss
+	 */
+	public static boolean canRepresent(Fraction value, long resolution) {
+		return resolution % value.divisor() == 0;
+	}
+
+	/**
+	 * Converts a fraction to units of the given resolution, truncating toward zero
+	 * if the fraction cannot be represented exactly.
+	 *
+	 * @param value fraction to be converted
+	 * @param resolution number of units in one whole
+	 * @return number of units
+	 * @throws ArithmeticException if the result does not fit in a long
+	 */
+	public static long toUnits(Fraction value, long resolution) {
+		return Math.addExact(Math.multiplyExact(value.whole(), resolution), fractionalUnits(value, resolution));
+	}
+
+	/**
+	 * Same as {@link #toUnits(Fraction, long)} but results that do not fit in a long are clamped
+	 * to {@link Long#MAX_VALUE} or {@link Long#MIN_VALUE}. For requests, which may be arbitrarily
+	 * large - {@link Fraction#MAX_VALUE} for example.
+	 *
+	 * @param value fraction to be converted
+	 * @param resolution number of units in one whole
+	 * @return number of units, saturated
+	 */
+	public static long toUnitsSaturated(Fraction value, long resolution) {
+		final long whole = value.whole();
+		final long base = whole * resolution;
+
+		if (Math.multiplyHigh(whole, resolution) != (base >> 63)) {
+			return whole < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+		}
+
+		// whole and numerator have the same sign, so the sum can only overflow in that direction
+		final long fraction = fractionalUnits(value, resolution);
+		final long result = base + fraction;
+		return ((base ^ result) & (fraction ^ result)) < 0 ? (fraction < 0 ? Long.MIN_VALUE : Long.MAX_VALUE) : result;
+	}
+
+	// numerator is smaller than divisor, so the fractional part is always less than resolution
+	private static long fractionalUnits(Fraction value, long resolution) {
+		final long divisor = value.divisor();
+
+		if (divisor == 1) {
+			return 0;
+		} else if (divisor == resolution) {
+			return value.numerator();
+		} else if (resolution % divisor == 0) {
+			return value.numerator() * (resolution / divisor);
+		} else {
+			return multiplyDivide(value.numerator(), resolution, divisor);
+		}
+	}
+
+	/**
+	 * Computes {@code a * b / c}, truncated toward zero, without overflow of the intermediate product.
+	 * Products that fit in 64 bits use plain long math.
+	 *
+	 * @return the quotient, or {@link Long#MAX_VALUE} or {@link Long#MIN_VALUE} if the quotient does not fit
+	 */
+	public static long multiplyDivide(long a, long b, long c) {
+		final long lo = a * b;
+
+		if (Math.multiplyHigh(a, b) == (lo >> 63)) {
+			return lo / c;
+		}
+
+		// rare - product needs more than 64 bits
+		final BigInteger q = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(c));
+		return q.bitLength() < 64 ? q.longValue() : (q.signum() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Sets the target to a value equal to the given number of units at the given resolution.
+	 * The result is normalized.
+	 *
+	 * @param target mutable fraction to receive the value
+	 * @param units number of units
+	 * @param resolution number of units in one whole
+	 * @return the target
+	 */
+	public static MutableFraction setFraction(MutableFraction target, long units, long resolution) {
+		final long whole = units / resolution;
+		target.set(whole, units - whole * resolution, resolution);
+		target.normalize();
+		return target;
+	}
+
+	private static long convert(long units, long fromResolution, long toResolution) {
+		final long whole = units / fromResolution;
+		final long remainder = units - whole * fromResolution;
+		return Math.addExact(Math.multiplyExact(whole, toResolution), multiplyDivide(remainder, toResolution, fromResolution));
+	}
+}
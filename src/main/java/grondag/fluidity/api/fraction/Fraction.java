@@ -31,6 +31,12 @@ public class Fraction implements Comparable<Fraction> {
 	protected long numerator;
 	protected long divisor;
 
+	/**
+	 * True when fields may not be reduced. Only ever set by {@link MutableFraction}
+	 * when normalization is deferred. Public accessors always return reduced values.
+	 */
+	protected boolean needsNormalize = false;
+
 	/**
 	 * Constructs a new fraction with value of zero.
 	 * Generally better to use {@link #ZERO} instead.
@@ -74,6 +80,16 @@ public class Fraction implements Comparable<Fraction> {
 		readBufferInner(buf);
 	}
 
+	/**
+	 * Deserializes a new instance from data encoded with the given wire format version.
+	 *
+	 * @param buf packet buffer containing data encoded by {@link #writeBuffer(PacketByteBuf, int)}
+	 * @param wireVersion one of {@link #WIRE_LEGACY} or {@link #WIRE_COMPACT}
+	 */
+	public Fraction(PacketByteBuf buf, int wireVersion) {
+		readBufferInner(buf, wireVersion);
+	}
+
 	public Fraction(long whole) {
 		this(whole, 0, 1);
 	}
@@ -91,6 +107,7 @@ public class Fraction implements Comparable<Fraction> {
 	 * @return The whole-number portion of this fraction
 	 */
 	public final long whole() {
+		normalizeIfNeeded();
 		return whole;
 	}
 
@@ -108,6 +125,7 @@ public class Fraction implements Comparable<Fraction> {
 	 * @return The whole-number portion of this fraction
 	 */
 	public final long numerator() {
+		normalizeIfNeeded();
 		return numerator;
 	}
 
@@ -118,18 +136,69 @@ public class Fraction implements Comparable<Fraction> {
 	 * @return the denominator for the fractional portion of this fraction
 	 */
 	public final long divisor() {
+		normalizeIfNeeded();
 		return divisor;
 	}
 
 	/**
-	 * Serializes this instance to the given packet buffer.
+	 * Serializes this instance to the given packet buffer using the current wire format, {@link #WIRE_VERSION}.
 	 *
 	 * @param buffer packet buffer to receive serialized data
 	 */
 	public final void writeBuffer(PacketByteBuf buffer) {
-		buffer.writeVarLong(whole);
-		buffer.writeVarLong(numerator);
-		buffer.writeVarLong(divisor);
+		writeBuffer(buffer, WIRE_VERSION);
+	}
+
+	/**
+	 * Serializes this instance to the given packet buffer using the given wire format.<p>
+	 *
+	 * The compact format starts with a header byte. Bit 0 is set when the whole part is non-zero
+	 * and bit 1 when the value is negative. Bit 2 is set when there is a fractional part, and then the
+	 * upper four bits hold the index of the divisor in a table of common divisors, or zero when
+	 * the divisor follows explicitly. Only the parts that are present follow the header, as
+	 * absolute-value varlongs. A whole number thus takes one byte plus the whole value.
+	 *
+	 * @param buffer packet buffer to receive serialized data
+	 * @param wireVersion one of {@link #WIRE_LEGACY} or {@link #WIRE_COMPACT}
+	 */
+	public final void writeBuffer(PacketByteBuf buffer, int wireVersion) {
+		normalizeIfNeeded();
+
+		if (wireVersion == WIRE_LEGACY) {
+			buffer.writeVarLong(whole);
+			buffer.writeVarLong(numerator);
+			buffer.writeVarLong(divisor);
+			return;
+		}
+
+		final boolean negative = whole < 0 || numerator < 0;
+		int header = negative ? HEADER_NEGATIVE : 0;
+
+		if (whole != 0) {
+			header |= HEADER_WHOLE;
+		}
+
+		int divisorIndex = 0;
+
+		if (numerator != 0) {
+			header |= HEADER_FRACTION;
+			divisorIndex = commonDivisorIndex(divisor);
+			header |= divisorIndex << HEADER_DIVISOR_SHIFT;
+		}
+
+		buffer.writeByte(header);
+
+		if (whole != 0) {
+			buffer.writeVarLong(negative ? -whole : whole);
+		}
+
+		if (numerator != 0) {
+			buffer.writeVarLong(negative ? -numerator : numerator);
+
+			if (divisorIndex == 0) {
+				buffer.writeVarLong(divisor);
+			}
+		}
 	}
 
 	/**
@@ -140,6 +209,7 @@ public class Fraction implements Comparable<Fraction> {
 	 * @param tag NBT tag to contain serialized data
 	 */
 	public final void writeTag(NbtCompound tag) {
+		normalizeIfNeeded();
 		tag.putLong("whole", whole);
 		tag.putLong("numerator", numerator);
 		tag.putLong("denominator", divisor);
@@ -157,12 +227,46 @@ public class Fraction implements Comparable<Fraction> {
 	}
 
 	protected final void readBufferInner(PacketByteBuf buf) {
-		whole = buf.readVarLong();
-		numerator = buf.readVarLong();
-		divisor = buf.readVarLong();
+		readBufferInner(buf, WIRE_VERSION);
+	}
+
+	protected final void readBufferInner(PacketByteBuf buf, int wireVersion) {
+		if (wireVersion == WIRE_LEGACY) {
+			whole = buf.readVarLong();
+			numerator = buf.readVarLong();
+			divisor = buf.readVarLong();
+		} else {
+			final int header = buf.readByte() & 0xFF;
+			whole = (header & HEADER_WHOLE) == 0 ? 0 : buf.readVarLong();
+
+			if ((header & HEADER_FRACTION) == 0) {
+				numerator = 0;
+				divisor = 1;
+			} else {
+				numerator = buf.readVarLong();
+				final int divisorIndex = header >>> HEADER_DIVISOR_SHIFT;
+				divisor = divisorIndex == 0 ? buf.readVarLong() : COMMON_DIVISORS[divisorIndex - 1];
+			}
+
+			if ((header & HEADER_NEGATIVE) != 0) {
+				whole = -whole;
+				numerator = -numerator;
+			}
+		}
+
 		normalize();
 	}
 
+	private static int commonDivisorIndex(long divisor) {
+		for (int i = 0; i < COMMON_DIVISORS.length; ++i) {
+			if (COMMON_DIVISORS[i] == divisor) {
+				return i + 1;
+			}
+		}
+
+		return 0;
+	}
+
 	protected final void readTagInner(NbtCompound tag) {
 		whole = tag.getLong("whole");
 		numerator = tag.getLong("numerator");
@@ -181,6 +285,7 @@ public class Fraction implements Comparable<Fraction> {
 
 	@Override
 	public final int hashCode() {
+		normalizeIfNeeded();
 		return (int) (HashCommon.mix(whole) ^ HashCommon.mix(numerator ^ divisor));
 	}
 
@@ -192,10 +297,19 @@ public class Fraction implements Comparable<Fraction> {
 
 	@Override
 	public final String toString() {
+		normalizeIfNeeded();
 		return String.format("%d and %d / %d, approx: %f", whole, numerator, divisor, toDouble());
 	}
 
+	protected final void normalizeIfNeeded() {
+		if (needsNormalize) {
+			normalize();
+		}
+	}
+
 	protected final void normalize() {
+		needsNormalize = false;
+
 		if (Math.abs(numerator) >= divisor) {
 			final long w = numerator / divisor;
 			whole += w;
@@ -228,23 +342,60 @@ public class Fraction implements Comparable<Fraction> {
 			divisor >>= twos;
 		}
 
-		// use conventional gcd for rest
 		final long gcd = gcd(Math.abs(numerator), divisor);
 
-		if (gcd != divisor) {
+		if (gcd != 1) {
 			numerator /= gcd;
 			divisor /= gcd;
 		}
 	}
 
+	/**
+	 * Inputs should be non-negative. See {@link #gcdOf(long, long)}.
+	 */
 	protected final long gcd(long a, long b) {
-		while (b != 0) {
-			final long t = b;
-			b = a % b;
-			a = t;
+		return gcdOf(a, b);
+	}
+
+	/**
+	 * Binary (Stein) GCD. Avoids the long division of the Euclidean algorithm,
+	 * which dominates the cost of normalization for typical divisors.
+	 * Negative inputs, including {@link Long#MIN_VALUE}, use the Euclidean algorithm
+	 * because the binary loop only terminates for non-negative values.
+	 */
+	static long gcdOf(long a, long b) {
+		if ((a | b) < 0) {
+			while (b != 0) {
+				final long t = a % b;
+				a = b;
+				b = t;
+			}
+
+			return Math.abs(a);
 		}
 
-		return a;
+		if (a == 0) {
+			return b;
+		} else if (b == 0) {
+			return a;
+		}
+
+		final int shift = Long.numberOfTrailingZeros(a | b);
+		a >>= Long.numberOfTrailingZeros(a);
+
+		do {
+			b >>= Long.numberOfTrailingZeros(b);
+
+			if (a > b) {
+				final long t = b;
+				b = a;
+				a = t;
+			}
+
+			b -= a;
+		} while (b != 0);
+
+		return a << shift;
 	}
 
 	/**
@@ -314,7 +465,40 @@ public class Fraction implements Comparable<Fraction> {
 	@Override
 	public final int compareTo(Fraction o) {
 		final int result = Long.compare(whole(), o.whole());
-		return result == 0 ? Long.compare(numerator() * o.divisor(), o.numerator() * divisor()) : result;
+		return result == 0 ? compareProducts(numerator(), o.divisor(), o.numerator(), divisor()) : result;
+	}
+
+	/**
+	 * Compares {@code a * b} with {@code c * d} without overflow. Operands that fit in 31 bits
+	 * use plain long multiplication. Larger operands are compared as 128-bit products
+	 * built with {@link Math#multiplyHigh(long, long)}.
+	 *
+	 * @return negative, zero or positive as {@code a * b} is less than, equal to or greater than {@code c * d}
+	 */
+	public static int compareProducts(long a, long b, long c, long d) {
+		if (((Math.abs(a) | Math.abs(b) | Math.abs(c) | Math.abs(d)) >>> 31) == 0) {
+			return Long.compare(a * b, c * d);
+		}
+
+		final int result = Long.compare(Math.multiplyHigh(a, b), Math.multiplyHigh(c, d));
+		return result == 0 ? Long.compareUnsigned(a * b, c * d) : result;
+	}
+
+	/**
+	 * Multiplies two longs, throwing if the 128-bit product does not fit in 64 bits.
+	 * Same contract as {@link Math#multiplyExact(long, long)} but skips the
+	 * high-word computation when both operands fit in 31 bits.
+	 *
+	 * @throws ArithmeticException if the result overflows a long
+	 */
+	protected static long multiplyChecked(long a, long b) {
+		final long lo = a * b;
+
+		if (((Math.abs(a) | Math.abs(b)) >>> 31) != 0 && Math.multiplyHigh(a, b) != (lo >> 63)) {
+			throw new ArithmeticException("Fraction multiplication overflow");
+		}
+
+		return lo;
 	}
 
 	public final boolean isGreaterThan(Fraction other) {
@@ -409,19 +593,47 @@ public class Fraction implements Comparable<Fraction> {
 		return f.toImmutable();
 	}
 
-	public static final Fraction ZERO = Fraction.of(0, 0, 1);
-	public static final Fraction ONE = Fraction.of(1, 0, 1);
-	public static final Fraction MAX_VALUE = Fraction.of(Long.MAX_VALUE, 0, 1);
+	/** Wire format used before compact encoding: whole, numerator and divisor as three varlongs. */
+	public static final int WIRE_LEGACY = 0;
+	/** Wire format with a header byte that elides zero parts and encodes common divisors as an index. */
+	public static final int WIRE_COMPACT = 1;
+	/**
+	 * Wire format used by {@link #writeBuffer(PacketByteBuf)} and {@link #Fraction(PacketByteBuf)}.
+	 * Packets that may reach a receiver built against an older format should negotiate the
+	 * format for each connection and pass it explicitly instead.
+	 */
+	public static final int WIRE_VERSION = WIRE_COMPACT;
+
+	private static final int HEADER_WHOLE = 1;
+	private static final int HEADER_NEGATIVE = 2;
+	private static final int HEADER_FRACTION = 4;
+	private static final int HEADER_DIVISOR_SHIFT = 4;
+
+	/** Divisors encoded as an index in the compact wire format. At most 15 entries. Never reorder. */
+	private static final long[] COMMON_DIVISORS = {2, 3, 4, 5, 6, 8, 9, 10, 12, 16, 20, 100, 1000, 1620, 81000};
+
+	// constructed directly - FractionCache reuses these, so it must not be loaded by this initializer
+	public static final Fraction ZERO = new Fraction(0, 0, 1);
+	public static final Fraction ONE = new Fraction(1, 0, 1);
+	public static final Fraction MAX_VALUE = new Fraction(Long.MAX_VALUE, 0, 1);
 
+	/**
+	 * Returns an immutable fraction with the given value. Common non-negative values
+	 * (whole numbers and halves, thirds, quarters and ninths up to the bound set in
+	 * {@link FractionCache}) are shared instances, so callers must not rely on identity.
+	 */
 	public static Fraction of(long whole, long numerator, long divisor) {
-		return new Fraction(whole, numerator, divisor);
+		final Fraction result = FractionCache.get(whole, numerator, divisor);
+		return result == null ? new Fraction(whole, numerator, divisor) : result;
 	}
 
 	public static Fraction of(long numerator, long divisor) {
-		return new Fraction(numerator, divisor);
+		final Fraction result = FractionCache.get(0, numerator, divisor);
+		return result == null ? new Fraction(numerator, divisor) : result;
 	}
 
 	public static Fraction of(long whole) {
-		return new Fraction(whole);
+		final Fraction result = FractionCache.get(whole, 0, 1);
+		return result == null ? new Fraction(whole) : result;
 	}
 }
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.api.fraction;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+/**
+ * Shared immutable instances for common non-negative values: whole numbers and
+ * halves, thirds, quarters and ninths with whole part up to a configurable bound.
+ * Used by the {@code Fraction.of()} factories so that bulk transfers of common
+ * amounts don't allocate.<p>
+ *
+ * Tables are fully populated before they are published, so lookups need no locking.
+ */
+@Internal
+public final class FractionCache {
+	private FractionCache() {}
+
+	public static final int DEFAULT_MAX_WHOLE = 256;
+
+	/** Divisors with cached instances. All must be less than {@code 16}. */
+	private static final int[] DIVISORS = {1, 2, 3, 4, 9};
+
+	/** Indexed by divisor, then by {@code whole * divisor + numerator}. Null for divisors that are not cached. */
+	private static volatile Fraction[][] tables = build(DEFAULT_MAX_WHOLE);
+
+	/**
+	 * Replaces the cache with one covering whole values from zero through {@code maxWhole}.
+	 * Zero disables caching of anything except zero itself.
+	 *
+	 * @param maxWhole largest cached whole value, inclusive
+	 */
+	public static void configure(int maxWhole) {
+		if (maxWhole < 0) {
+			throw new IllegalArgumentException("Fraction cache bound must be >= 0");
+		}
+
+		if (maxWhole != maxWhole()) {
+			tables = build(maxWhole);
+		}
+	}
+
+	/**
+	 * @return largest cached whole value, inclusive
+	 */
+	public static int maxWhole() {
+		return tables[1].length - 1;
+	}
+
+	/**
+	 * Returns the shared instance for the given value if there is one.
+	 * Inputs need not be reduced - {@code 2/4} and {@code 0 5/4} find the entries
+	 * for {@code 1/2} and {@code 1 1/4}.
+	 *
+	 * @return shared instance, or {@code null} if the value is not cached
+	 */
+	static Fraction get(long whole, long numerator, long divisor) {
+		if (whole < 0 || numerator < 0 || divisor < 1) {
+			return null;
+		}
+
+		final Fraction[][] tables = FractionCache.tables;
+		final int wholeLimit = tables[1].length;
+
+		if (whole >= wholeLimit) {
+			return null;
+		}
+
+		if (numerator == 0) {
+			return tables[1][(int) whole];
+		}
+
+		if (divisor >= tables.length || numerator >= wholeLimit * divisor) {
+			return null;
+		}
+
+		final Fraction[] t = tables[(int) divisor];
+
+		if (t == null) {
+			return null;
+		}
+
+		final long index = whole * divisor + numerator;
+		return index < t.length ? t[(int) index] : null;
+	}
+
+	private static Fraction[][] build(int maxWhole) {
+		final Fraction[][] result = new Fraction[16][];
+
+		for (final int divisor : DIVISORS) {
+			final Fraction[] t = new Fraction[(maxWhole + 1) * divisor];
+
+			for (int i = 0; i < t.length; i++) {
+				final int whole = i / divisor;
+				final int numerator = i - whole * divisor;
+				// reuse the lowest-terms instance so that 2/4 and 1/2 share an entry
+				t[i] = numerator == 0 ? (divisor == 1 ? wholeOf(whole) : result[1][whole]) : lowest(result, whole, numerator, divisor);
+			}
+
+			result[divisor] = t;
+		}
+
+		return result;
+	}
+
+	private static Fraction wholeOf(int whole) {
+		// Fraction constants never call back into this class, so they are safe to use here
+		return whole == 0 ? Fraction.ZERO : (whole == 1 ? Fraction.ONE : new Fraction(whole, 0, 1));
+	}
+
+	private static Fraction lowest(Fraction[][] tables, int whole, int numerator, int divisor) {
+		final Fraction f = new Fraction(whole, numerator, divisor);
+		final Fraction[] t = tables[(int) f.divisor()];
+		return t == null ? f : t[(int) (f.whole() * f.divisor() + f.numerator())];
+	}
+}
@@ -15,6 +15,8 @@
  ******************************************************************************/
 package grondag.fluidity.api.fraction;
 
+import java.math.BigInteger;
+
 import org.jetbrains.annotations.ApiStatus.Experimental;
 
 import net.minecraft.nbt.NbtCompound;
@@ -23,6 +25,11 @@ import net.minecraft.network.PacketByteBuf;
 
 @Experimental
 public final class MutableFraction extends Fraction {
+	/** Divisor products above this are reduced before adding so that numerator sums cannot overflow. */
+	private static final long MAX_DEFERRED_DIVISOR = 1L << 62;
+
+	private boolean deferNormalization = false;
+
 	public MutableFraction() {
 		super();
 	}
@@ -63,6 +70,29 @@ public final class MutableFraction extends Fraction {
 		readBuffer(buf);
 	}
 
+	/**
+	 * When enabled, addition and subtraction skip reduction for as long as intermediate
+	 * values safely fit in 63 bits. Useful for accumulators that sum many partial results
+	 * before the value is read. Values are reduced on first read, comparison or serialization,
+	 * so the mode is not visible to consumers of this instance.
+	 *
+	 * @param defer {@code true} to defer normalization, {@code false} to reduce after every operation
+	 * @return this instance
+	 */
+	public MutableFraction deferNormalization(boolean defer) {
+		deferNormalization = defer;
+
+		if (!defer) {
+			normalizeIfNeeded();
+		}
+
+		return this;
+	}
+
+	public boolean isNormalizationDeferred() {
+		return deferNormalization;
+	}
+
 	public MutableFraction set(long whole) {
 		return this.set(whole, 0, 1);
 	}
@@ -72,6 +102,7 @@ public final class MutableFraction extends Fraction {
 		whole = numerator / divisor;
 		this.numerator = numerator - whole * divisor;
 		this.divisor = divisor;
+		needsNormalize = deferNormalization;
 		return this;
 	}
 
@@ -80,6 +111,7 @@ public final class MutableFraction extends Fraction {
 		this.whole = whole;
 		this.numerator = numerator;
 		this.divisor = divisor;
+		needsNormalize = deferNormalization;
 		return this;
 	}
 
@@ -87,6 +119,7 @@ public final class MutableFraction extends Fraction {
 		whole = template.whole();
 		numerator = template.numerator();
 		divisor = template.divisor();
+		needsNormalize = false;
 		return this;
 	}
 
@@ -102,6 +135,10 @@ public final class MutableFraction extends Fraction {
 		return add(0, numerator, divisor);
 	}
 
+	/**
+	 * @throws ArithmeticException if the divisor of the result cannot be represented,
+	 * which can only happen for large divisors without common factors
+	 */
 	public MutableFraction add(long whole, long numerator, long divisor) {
 		validate(whole, numerator, divisor);
 		this.whole += whole;
@@ -112,27 +149,95 @@ public final class MutableFraction extends Fraction {
 			numerator -= w * divisor;
 		}
 
-		final long n = this.numerator * divisor + numerator * this.divisor;
+		if (deferNormalization && addDeferred(numerator, divisor)) {
+			return this;
+		}
+
+		normalizeIfNeeded();
+
+		final long n, d;
+
+		if (divisor == this.divisor) {
+			// both numerators are smaller than the divisor, so the sum can't overflow
+			n = this.numerator + numerator;
+			d = divisor;
+		} else {
+			// scale both sides to the least common multiple of the divisors
+			final long g = gcd(this.divisor, divisor);
+			final long thisScale = divisor / g;
+			n = Math.addExact(multiplyChecked(this.numerator, thisScale), multiplyChecked(numerator, this.divisor / g));
+			d = multiplyChecked(this.divisor, thisScale);
+		}
 
 		if (n == 0) {
 			this.numerator = 0;
 			this.divisor = 1;
 		} else {
 			this.numerator = n;
-			this.divisor = divisor * this.divisor;
+			this.divisor = d;
 			normalize();
 		}
 
 		return this;
 	}
 
+	/**
+	 * Adds a fractional part without reducing the result. Whole units are still carried
+	 * so that the numerator stays smaller than the divisor in absolute value.
+	 *
+	 * @return {@code false} if the divisor product would be too large, in which case nothing is changed
+	 */
+	private boolean addDeferred(long numerator, long divisor) {
+		if (numerator == 0) {
+			// the whole part may now have a different sign than the fractional part
+			if (this.numerator != 0) {
+				needsNormalize = true;
+			}
+
+			return true;
+		}
+
+		long n, d;
+
+		if (divisor == this.divisor) {
+			// common case - same resolution needs no multiplication
+			n = this.numerator + numerator;
+			d = divisor;
+		} else if (this.numerator == 0) {
+			n = numerator;
+			d = divisor;
+		} else {
+			d = this.divisor * divisor;
+
+			if (Math.multiplyHigh(this.divisor, divisor) != 0 || d < 0 || d > MAX_DEFERRED_DIVISOR) {
+				return false;
+			}
+
+			n = this.numerator * divisor + numerator * this.divisor;
+		}
+
+		if (n >= d) {
+			++whole;
+			n -= d;
+		} else if (n <= -d) {
+			--whole;
+			n += d;
+		}
+
+		this.numerator = n;
+		this.divisor = d;
+		needsNormalize = true;
+		return true;
+	}
+
 	public MutableFraction multiply(Fraction val) {
 		return multiply(val.whole(), val.numerator(), val.divisor());
 	}
 
 	public MutableFraction multiply(long whole) {
-		numerator *= whole;
-		this.whole *= whole;
+		normalizeIfNeeded();
+		numerator = multiplyChecked(numerator, whole);
+		this.whole = multiplyChecked(this.whole, whole);
 		normalize();
 		return this;
 	}
@@ -147,6 +252,7 @@ public final class MutableFraction extends Fraction {
 		}
 
 		validate(whole, numerator, divisor);
+		normalizeIfNeeded();
 
 		// normalize fractional part
 		if (Math.abs(numerator) >= divisor) {
@@ -155,6 +261,11 @@ public final class MutableFraction extends Fraction {
 			numerator -= w * divisor;
 		}
 
+		// terms below are products of up to three operands, so plain long math is only safe for small values
+		if (((Math.abs(whole) | Math.abs(this.whole) | divisor | this.divisor) >>> 20) != 0) {
+			return multiplyChecked(whole, numerator, divisor);
+		}
+
 		// avoids a division later to factor out common divisor from the two steps that follow this
 		final long numeratorProduct = numerator * this.numerator;
 		this.numerator *= divisor;
@@ -168,6 +279,65 @@ public final class MutableFraction extends Fraction {
 		return this;
 	}
 
+	/**
+	 * Multiplication for large operands. Works with improper fractions, reduced across operands
+	 * before multiplying, so that {@code (p/q) * (q/p)} does not overflow. If the improper form or
+	 * the reduced products still need more than 64 bits, the product is computed exactly with
+	 * {@code BigInteger}. Arguments must already be validated with numerator smaller than divisor.
+	 *
+	 * @throws ArithmeticException only if the reduced result cannot be represented
+	 */
+	private MutableFraction multiplyChecked(long whole, long numerator, long divisor) {
+		final long n, d;
+
+		try {
+			final long a = Math.addExact(multiplyChecked(this.whole, this.divisor), this.numerator);
+			final long b = Math.addExact(multiplyChecked(whole, divisor), numerator);
+			final long g0 = gcd(Math.abs(a), divisor);
+			final long g1 = gcd(Math.abs(b), this.divisor);
+			n = multiplyChecked(a / g0, b / g1);
+			d = multiplyChecked(this.divisor / g1, divisor / g0);
+		} catch (final ArithmeticException e) {
+			return multiplyExact(whole, numerator, divisor);
+		}
+
+		this.whole = n / d;
+		this.numerator = n - this.whole * d;
+		this.divisor = d;
+		normalize();
+
+		return this;
+	}
+
+	private MutableFraction multiplyExact(long whole, long numerator, long divisor) {
+		final BigInteger d0 = BigInteger.valueOf(this.divisor);
+		final BigInteger d1 = BigInteger.valueOf(divisor);
+		final BigInteger a = BigInteger.valueOf(this.whole).multiply(d0).add(BigInteger.valueOf(this.numerator));
+		final BigInteger b = BigInteger.valueOf(whole).multiply(d1).add(BigInteger.valueOf(numerator));
+		BigInteger n = a.multiply(b);
+		BigInteger d = d0.multiply(d1);
+		final BigInteger gcd = n.gcd(d);
+
+		if (gcd.signum() != 0) {
+			n = n.divide(gcd);
+			d = d.divide(gcd);
+		}
+
+		final BigInteger[] qr = n.divideAndRemainder(d);
+
+		// each of these throws if the reduced result does not fit
+		final long w = qr[0].longValueExact();
+		final long r = qr[1].longValueExact();
+		final long newDivisor = d.longValueExact();
+
+		this.whole = w;
+		this.numerator = r;
+		this.divisor = newDivisor;
+		normalize();
+
+		return this;
+	}
+
 	public MutableFraction subtract(Fraction val) {
 		return add(-val.whole(), -val.numerator(), val.divisor());
 	}
@@ -192,6 +362,8 @@ public final class MutableFraction extends Fraction {
 	 * @param divisor Desired multiple
 	 */
 	public void roundDown(long divisor) {
+		normalizeIfNeeded();
+
 		if(this.divisor != divisor) {
 			this.set(whole, numerator * divisor / this.divisor, divisor);
 		}
@@ -201,6 +373,10 @@ public final class MutableFraction extends Fraction {
 		super.readBufferInner(buffer);
 	}
 
+	public void readBuffer(PacketByteBuf buffer, int wireVersion) {
+		super.readBufferInner(buffer, wireVersion);
+	}
+
 	public void readTag(NbtCompound tag) {
 		super.readTagInner(tag);
 	}
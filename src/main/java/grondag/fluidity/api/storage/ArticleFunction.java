@@ -63,12 +63,53 @@ public interface ArticleFunction extends TransactionParticipant {
 
 	default boolean canApply(Article article) {
 		if (article.type().isBulk()) {
-			return !apply(article, Fraction.ONE, true).isZero();
+			return !query(article, Fraction.ONE).isZero();
 		} else {
-			return apply(article, 1, true) == 1;
+			return query(article, 1) == 1;
 		}
 	}
 
+	/**
+	 * Read-only forecast of {@link #apply(Article, long, boolean)}. Unlike a simulated apply,
+	 * implementations must never open or enlist in a transaction, prepare rollback state
+	 * or change any state, including lazily-assigned articles. Use for questions like
+	 * "how much would fit" that are never followed by an actual transfer.<p>
+	 *
+	 * The default implementation simulates, which is correct but may not be as cheap.
+	 *
+	 * @param article Item to added/removed
+	 * @param count How many to add or remove. Must be >= 0;
+	 * @return Count that would be added or removed
+	 */
+	default long query(Article article, long count) {
+		return apply(article, count, true);
+	}
+
+	/**
+	 * Read-only forecast of {@link #apply(Article, Fraction, boolean)}.
+	 * Same contract as {@link #query(Article, long)}.
+	 *
+	 * @param article  The stuff to add or remove
+	 * @param volume How much to add or remove
+	 * @return How much stuff would be added or removed
+	 */
+	default Fraction query(Article article, Fraction volume) {
+		return apply(article, volume, true);
+	}
+
+	/**
+	 * Read-only forecast of {@link #apply(Article, long, long, boolean)}.
+	 * Same contract as {@link #query(Article, long)}.
+	 *
+	 * @param article The stuff to add or remove
+	 * @param numerator Fractional units to add or remove. Can be zero.
+	 * @param divisor Denominator of units to add or remove. Must be >= 1.
+	 * @return How much would be added or removed, in units of given denominator.
+	 */
+	default long query(Article article, long numerator, long divisor) {
+		return apply(article, numerator, divisor, true);
+	}
+
 	default long apply(Item item, @Nullable NbtCompound tag, long count, boolean simulate) {
 		return apply(Article.of(item, tag), count, simulate);
 	}
@@ -144,13 +144,13 @@ public interface Store extends TransactionParticipant {
 	long count();
 
 	default long countOf(Article item)  {
-		return getSupplier().apply(item, Long.MAX_VALUE, true);
+		return getSupplier().query(item, Long.MAX_VALUE);
 	}
 
 	Fraction amount();
 
 	default Fraction amountOf(Article item)  {
-		return getSupplier().apply(item, Fraction.MAX_VALUE, true);
+		return getSupplier().query(item, Fraction.MAX_VALUE);
 	}
 
 	/**
@@ -221,10 +221,36 @@ public interface Store extends TransactionParticipant {
 		return true;
 	}
 
+	/**
+	 * The returned tag may share nested tags with earlier results, so that unchanged content
+	 * isn't serialized again. Callers must treat it as read-only. It may be stored in an item stack
+	 * because stack copies are deep, but code that edits stack tags in place must
+	 * {@link NbtCompound#copy() copy} it first.
+	 *
+	 * @return Saved form of the store content
+	 */
 	NbtCompound writeTag();
 
 	void readTag(NbtCompound tag);
 
+	/**
+	 * Immutable copy of the current content of this store, for read-only consumers such as
+	 * display synchronization, metrics or planning that may run on other threads.
+	 * Must be called from the thread that owns the store, but the result may be read from any thread.<p>
+	 *
+	 * Stores that track content versions should return the same instance until their content changes,
+	 * so that repeated calls are cheap. The default implementation copies the store on every call.<p>
+	 *
+	 * Snapshots are full copies, not copy-on-write. The first call after any change copies every handle
+	 * of the store, so cost is proportional to the store size, not the number of changes. Consumers of
+	 * large, frequently changing stores should poll at a bounded rate.
+	 *
+	 * @return Immutable snapshot of the current content of this store
+	 */
+	default StoreSnapshot snapshot() {
+		return StoreSnapshot.of(this, StoreSnapshot.UNVERSIONED);
+	}
+
 	Predicate <? super StoredArticleView> NOT_EMPTY = a -> !a.isEmpty();
 
 	Store EMPTY = EmptyStore.INSTANCE;
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.api.storage;
+
+import java.util.function.Predicate;
+
+import com.google.common.base.Predicates;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.article.StoredArticleView;
+import grondag.fluidity.api.fraction.Fraction;
+import grondag.fluidity.impl.storage.StoreSnapshotImpl;
+
+/**
+ * Immutable copy of the content of a {@link Store} at a point in time, obtained from {@link Store#snapshot()}.<p>
+ *
+ * Snapshots never change after they are created and may be read from any thread without a
+ * transaction or lock. Handles are those of the store when the snapshot was taken.
+ * Views obtained from a snapshot are also immutable and may be retained.
+ */
+@Experimental
+public interface StoreSnapshot {
+	/**
+	 * Content version of the store when this snapshot was taken. Two snapshots of the same store
+	 * with the same version have the same content. Snapshots of stores that don't track versions
+	 * report {@link #UNVERSIONED}.
+	 *
+	 * @return Content version of the store when this snapshot was taken
+	 */
+	long version();
+
+	int handleCount();
+
+	/**
+	 * @param handle
+	 * @return View of article at handle if handle is valid - view may be empty.
+	 * For invalid handles, returns {@link StoredArticleView#EMPTY}.
+	 */
+	StoredArticleView view(int handle);
+
+	default void forEach(Predicate<? super StoredArticleView> filter, Predicate<? super StoredArticleView> action) {
+		final int limit = handleCount();
+
+		for (int i = 0; i < limit; i++) {
+			final StoredArticleView article = view(i);
+
+			if (!article.isEmpty() && filter.test(article)) {
+				if (!action.test(article)) {
+					break;
+				}
+			}
+		}
+	}
+
+	default void forEach(Predicate<? super StoredArticleView> action) {
+		forEach(Predicates.alwaysTrue(), action);
+	}
+
+	boolean isEmpty();
+
+	long count();
+
+	Fraction amount();
+
+	long capacity();
+
+	Fraction volume();
+
+	/**
+	 * @param item Article to count
+	 * @return Total whole units of the article across all handles
+	 */
+	long countOf(Article item);
+
+	/**
+	 * @param item Article to measure
+	 * @return Total amount of the article across all handles
+	 */
+	Fraction amountOf(Article item);
+
+	/**
+	 * Value of {@link #version()} for snapshots of stores that don't track content versions.
+	 * Such snapshots must not be compared by version.
+	 */
+	long UNVERSIONED = -1;
+
+	StoreSnapshot EMPTY = StoreSnapshotImpl.EMPTY;
+
+	/**
+	 * Copies the current content of a store. Must be called from the thread that owns the store.
+	 *
+	 * @param store Store to copy
+	 * @param version Content version of the store, or {@link #UNVERSIONED}
+	 * @return New snapshot with the current content of the store
+	 */
+	static StoreSnapshot of(Store store, long version) {
+		return StoreSnapshotImpl.of(store, version);
+	}
+}
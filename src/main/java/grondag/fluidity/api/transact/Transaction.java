@@ -15,10 +15,14 @@
  ******************************************************************************/
 package grondag.fluidity.api.transact;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
 import org.jetbrains.annotations.ApiStatus.Experimental;
 import org.jetbrains.annotations.Nullable;
 
 import grondag.fluidity.impl.TransactionImpl;
+import grondag.fluidity.impl.TransactionQueueImpl;
 
 /**
  * Represents a aggregate operation involving one or
@@ -96,9 +100,12 @@ public interface Transaction extends AutoCloseable {
 	 * transaction and if the nested transaction was rolled back the state of the enclosing
 	 * transaction will be the same as it was prior to opening the nested transaction.<p>
 	 *
-	 * If called from a different thread than the current transaction, this method will block
-	 * until all current transactions on the other thread are closed, and then return a new,
-	 * root-level transaction.
+	 * Each thread has its own transaction stack. If called from a thread with no open transaction,
+	 * this method returns a new root-level transaction without waiting on other threads.
+	 * Participants are locked when enlisted and stay locked until the root transaction on the
+	 * enlisting thread closes, so transactions on disjoint participants run concurrently.
+	 * A non-server thread that cannot obtain a participant lock within the configured timeout
+	 * gets a {@link java.util.ConcurrentModificationException} and should let the transaction roll back.
 	 *
 	 * @return a new transaction
 	 */
@@ -106,6 +113,27 @@ public interface Transaction extends AutoCloseable {
 		return TransactionImpl.open();
 	}
 
+	/**
+	 * Queues work to run in its own root transaction on the server thread at the end of a server tick.
+	 * Intended for threads other than the server thread, which would otherwise contend with the server
+	 * for participant locks. Queued work runs in submission order; work submitted during a tick's batch
+	 * runs in the next tick.<p>
+	 *
+	 * The work function must call {@link #commit()} on the given transaction to retain its changes;
+	 * otherwise the transaction is rolled back when the function returns. If the function throws, the
+	 * transaction is rolled back and the future completes exceptionally. The future completes on the
+	 * server thread after the transaction closes, so dependent actions that should not run on the server
+	 * thread should use the async variants of {@link CompletableFuture} methods. Work that has not run when
+	 * the server stops completes with a {@link java.util.concurrent.CancellationException}.
+	 *
+	 * @param <T> type of result
+	 * @param work function to run in the transaction
+	 * @return future result of the work
+	 */
+	static <T> CompletableFuture<T> submit(Function<Transaction, T> work) {
+		return TransactionQueueImpl.submit(work);
+	}
+
 	/**
 	 * Retrieves the current open transaction at the deepest level of nesting, or null if
 	 * no transaction is currently open.
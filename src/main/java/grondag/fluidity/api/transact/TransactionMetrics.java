@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.api.transact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import grondag.fluidity.impl.TransactionMetricsImpl;
+
+/**
+ * Optional instrumentation of transaction activity, aggregated per server tick.<p>
+ *
+ * Disabled by default; enable with {@code transaction_metrics=true} in {@code fluidity.properties}
+ * or via {@link #setEnabled(boolean)}. When disabled the only cost is a single boolean check
+ * in transaction open and close.<p>
+ *
+ * Samples go to a pluggable {@link Sink}. The default sink keeps the most recent samples
+ * in memory and can write them to a file with {@link #dump(File)}.
+ */
+@Experimental
+public interface TransactionMetrics {
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Replaces the destination for per-tick samples. Pass {@code null} to restore the default ring buffer.
+	 *
+	 * @param sink receives one sample per server tick while metrics are enabled
+	 */
+	void setSink(Sink sink);
+
+	Sink getSink();
+
+	/**
+	 * Writes samples retained by the current sink to the given file as CSV.
+	 * Has no effect if the current sink does not retain samples.
+	 *
+	 * @param file destination file, will be overwritten
+	 * @throws IOException if the file cannot be written
+	 */
+	void dump(File file) throws IOException;
+
+	/**
+	 * Receives per-tick samples. Called on the server thread at the end of each tick.
+	 */
+	@FunctionalInterface
+	interface Sink {
+		void accept(Sample sample);
+
+		/**
+		 * Writes retained samples, if any, as CSV. Default does nothing.
+		 *
+		 * @param file destination file, will be overwritten
+		 * @throws IOException if the file cannot be written
+		 */
+		default void dump(File file) throws IOException { }
+	}
+
+	/**
+	 * Transaction activity during a single server tick, from all threads.
+	 */
+	final class Sample {
+		public final long tick;
+		public final long opened;
+		public final long committed;
+		public final long rolledBack;
+		/** Deepest nesting seen, where a root transaction has depth 1 */
+		public final int maxDepth;
+		/** Participants enlisted across all closed transactions */
+		public final long participants;
+		/** Most participants enlisted in a single transaction */
+		public final int maxParticipants;
+		/** Number of times a thread had to wait for a participant lock held by another thread */
+		public final long lockWaits;
+		public final long lockWaitNanos;
+		public final long maxLockWaitNanos;
+		/** Time spent running participant close handlers for committed transactions */
+		public final long commitHandlerNanos;
+		/** Time spent running participant close handlers for rolled-back transactions */
+		public final long rollbackHandlerNanos;
+		/** Enlistment counts by participant delegate class name, to help find the source of heavy activity */
+		public final Map<String, Long> enlistmentsByClass;
+
+		public Sample(long tick, long opened, long committed, long rolledBack, int maxDepth, long participants, int maxParticipants,
+				long lockWaits, long lockWaitNanos, long maxLockWaitNanos, long commitHandlerNanos, long rollbackHandlerNanos,
+				Map<String, Long> enlistmentsByClass) {
+			this.tick = tick;
+			this.opened = opened;
+			this.committed = committed;
+			this.rolledBack = rolledBack;
+			this.maxDepth = maxDepth;
+			this.participants = participants;
+			this.maxParticipants = maxParticipants;
+			this.lockWaits = lockWaits;
+			this.lockWaitNanos = lockWaitNanos;
+			this.maxLockWaitNanos = maxLockWaitNanos;
+			this.commitHandlerNanos = commitHandlerNanos;
+			this.rollbackHandlerNanos = rollbackHandlerNanos;
+			this.enlistmentsByClass = enlistmentsByClass;
+		}
+	}
+
+	/**
+	 * The singleton TransactionMetrics instance
+	 */
+	TransactionMetrics INSTANCE = TransactionMetricsImpl.INSTANCE;
+}
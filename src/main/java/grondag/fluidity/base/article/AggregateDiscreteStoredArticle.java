@@ -17,14 +17,15 @@ package grondag.fluidity.base.article;
 
 import java.util.Set;
 
-import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
 import org.jetbrains.annotations.ApiStatus.Experimental;
 
 import grondag.fluidity.api.storage.Store;
 
 @Experimental
 public class AggregateDiscreteStoredArticle extends StoredDiscreteArticle implements AggregateStoredArticle {
-	protected final ObjectOpenHashSet<Store> stores = new ObjectOpenHashSet<>();
+	// insertion order, so that members are drained in the order they were filled
+	protected final ObjectLinkedOpenHashSet<Store> stores = new ObjectLinkedOpenHashSet<>();
 
 	@Override
 	public Set<Store> stores() {
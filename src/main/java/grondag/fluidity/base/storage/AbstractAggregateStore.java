@@ -15,13 +15,18 @@
  ******************************************************************************/
 package grondag.fluidity.base.storage;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import org.apache.commons.lang3.ObjectUtils;
 import org.jetbrains.annotations.ApiStatus.Experimental;
 
 import grondag.fluidity.Fluidity;
+import grondag.fluidity.api.article.Article;
 import grondag.fluidity.api.article.StoredArticleView;
 import grondag.fluidity.api.storage.StorageListener;
 import grondag.fluidity.api.storage.Store;
@@ -32,7 +37,8 @@ import grondag.fluidity.base.storage.helper.FlexibleArticleManager;
 
 /**
  *  Transaction support: expects all member stores to be self-enlisting and relies on member store
- *  notifications for transaction handling.  Reports as self-enlisting but never enlists because is has no
+ *  notifications for transaction handling.  Reports as self-enlisting and enlists only to hold its lock
+ *  while requests are routed to members. Rollback is a no-op because is has no
  *  internal state that would participate in transactions that isn't redundant of members.
  *
  * @param <V>
@@ -43,6 +49,14 @@ public abstract class AbstractAggregateStore<V extends AggregateStoredArticle, T
 	protected final Consumer<TransactionContext> rollbackHandler = this::handleRollback;
 	protected final FlexibleArticleManager<V> articles;
 	protected final ObjectOpenHashSet<Store> stores = new ObjectOpenHashSet<>();
+	protected boolean exclusiveMembers = false;
+
+	// Routing index, maintained from member notifications so that requests only visit
+	// members that can respond. Per-article holders are tracked by each stored article.
+	// Members with a consumer that are not full, in the order they became open.
+	protected final ObjectLinkedOpenHashSet<Store> openStores = new ObjectLinkedOpenHashSet<>();
+	// Open members that hold nothing, and so can accept any article.
+	protected final ObjectLinkedOpenHashSet<Store> emptyStores = new ObjectLinkedOpenHashSet<>();
 
 	public AbstractAggregateStore(int startingHandleCount) {
 		articles = new FlexibleArticleManager<>(startingHandleCount, this::newArticle);
@@ -55,6 +69,7 @@ public abstract class AbstractAggregateStore<V extends AggregateStoredArticle, T
 	public void addStore(Store store) {
 		if(stores.add(store)) {
 			store.eventStream().startListening(listener(), true);
+			updateRouting(store);
 		}
 	}
 
@@ -64,9 +79,89 @@ public abstract class AbstractAggregateStore<V extends AggregateStoredArticle, T
 		if(stores.contains(store)) {
 			store.eventStream().stopListening(listener(), true);
 			stores.remove(store);
+			openStores.remove(store);
+			emptyStores.remove(store);
+		}
+	}
+
+	/**
+	 * Opt-in mode for aggregates whose members hold at most one article at a time, for example
+	 * tanks or drawers. When enabled, new articles are only offered to empty members, so an insert that
+	 * can't be satisfied doesn't visit every member that holds some other article.
+	 *
+	 * @param exclusiveMembers true if members never hold more than one article
+	 * @return this store
+	 */
+	@SuppressWarnings("unchecked")
+	public T exclusiveMembers(boolean exclusiveMembers) {
+		this.exclusiveMembers = exclusiveMembers;
+		return (T) this;
+	}
+
+	public boolean exclusiveMembers() {
+		return exclusiveMembers;
+	}
+
+	/**
+	 * Called when a member may have changed. Members that defer notifications update
+	 * the index only when they notify, so within a transaction the index may be stale.
+	 * Stale entries cost a wasted call, or leave a member out of routing until it notifies.
+	 */
+	protected void updateRouting(Store store) {
+		if (!stores.contains(store)) {
+			// notifications sent while a member is being removed
+			return;
+		}
+
+		if (store.hasConsumer() && !store.isFull()) {
+			openStores.add(store);
+
+			if (store.isEmpty()) {
+				emptyStores.add(store);
+			} else {
+				emptyStores.remove(store);
+			}
+		} else {
+			openStores.remove(store);
+			emptyStores.remove(store);
 		}
 	}
 
+	/**
+	 * Open members that hold the article, then empty members.
+	 */
+	protected void addAcceptCandidates(Set<Store> holders, List<Store> target) {
+		for (final Store store : holders) {
+			if (openStores.contains(store)) {
+				target.add(store);
+			}
+		}
+
+		for (final Store store : emptyStores) {
+			if (!holders.contains(store)) {
+				target.add(store);
+			}
+		}
+	}
+
+	/**
+	 * Open members that hold other articles but may still accept this one. None in exclusive mode.
+	 */
+	protected void addOtherAcceptCandidates(Set<Store> holders, List<Store> target) {
+		if (!exclusiveMembers) {
+			for (final Store store : openStores) {
+				if (!holders.contains(store) && !emptyStores.contains(store)) {
+					target.add(store);
+				}
+			}
+		}
+	}
+
+	protected Set<Store> holders(Article item) {
+		final V article = articles.get(item);
+		return article == null ? Collections.emptySet() : article.stores();
+	}
+
 	public AbstractAggregateStore() {
 		this(32);
 	}
@@ -26,12 +26,21 @@ import grondag.fluidity.base.transact.LazyRollbackHandler;
 
 @Experimental
 public abstract class AbstractLazyRollbackStore<V extends AbstractStoredArticle, T extends AbstractLazyRollbackStore<V, T>> extends AbstractStore<V, T> implements TransactionDelegate {
-	protected final LazyRollbackHandler rollbackHandler = new LazyRollbackHandler(this::createRollbackState, this::applyRollbackState, this);
+	protected final LazyRollbackHandler rollbackHandler = new LazyRollbackHandler(this::createRollbackState, this::onRollbackComplete, this);
 
 	protected abstract Object createRollbackState();
 
 	protected abstract void applyRollbackState(Object state, boolean isCommitted);
 
+	private void onRollbackComplete(Object state, boolean isCommitted) {
+		applyRollbackState(state, isCommitted);
+
+		// some stores restore content directly instead of through their article functions
+		if (!isCommitted) {
+			markChanged();
+		}
+	}
+
 	@Override
 	public TransactionDelegate getTransactionDelegate() {
 		return this;
@@ -74,6 +74,7 @@ import grondag.fluidity.api.storage.Store;
 
 	 protected void saveToStack() {
 		 final ItemStack stack = stackGetter.get();
+		 // shares nested tags with the store - see Store.writeTag
 		 writeTagToStack(stack, writeTag());
 		 stackSetter.accept(stack);
 	 }
@@ -28,6 +28,7 @@ import grondag.fluidity.api.article.ArticleType;
 import grondag.fluidity.api.storage.StorageEventStream;
 import grondag.fluidity.api.storage.StorageListener;
 import grondag.fluidity.api.storage.Store;
+import grondag.fluidity.api.storage.StoreSnapshot;
 import grondag.fluidity.api.util.AmbiguousBoolean;
 import grondag.fluidity.base.article.StoredArticle;
 import grondag.fluidity.base.storage.helper.ListenerSet;
@@ -39,6 +40,10 @@ public abstract class AbstractStore<V extends StoredArticle, T extends AbstractS
 	protected Runnable dirtyNotifier = Runnables.doNothing();
 	protected boolean isValid = true;
 	protected Predicate<ArticleType<?>> typeFilter = null;
+	protected boolean deferNotifications = false;
+	// incremented whenever content or capacity changes
+	protected long version = 0;
+	protected StoreSnapshot snapshot = null;
 
 	@SuppressWarnings("unchecked")
 	public T filter(Predicate<Article> filter) {
@@ -59,6 +64,29 @@ public abstract class AbstractStore<V extends StoredArticle, T extends AbstractS
 		return (T) this;
 	}
 
+	/**
+	 * When enabled, listener events caused by changes within a transaction are held until the
+	 * outermost transaction in which this store is enlisted closes. Events are then netted per
+	 * article and sent once if the transaction committed, or discarded if it rolled back.
+	 * Avoids notify/un-notify churn for listeners when operations are simulated in a
+	 * transaction and then abandoned.<p>
+	 *
+	 * Currently honored by discrete stores that hold their own content. Aggregate and bulk stores
+	 * always notify immediately.
+	 *
+	 * @param deferNotifications true to defer and coalesce notifications
+	 * @return this store
+	 */
+	@SuppressWarnings("unchecked")
+	public T deferNotifications(boolean deferNotifications) {
+		this.deferNotifications = deferNotifications;
+		return (T) this;
+	}
+
+	public boolean isDeferringNotifications() {
+		return deferNotifications;
+	}
+
 	@Override
 	public boolean isValid() {
 		return isValid;
@@ -105,4 +133,43 @@ public abstract class AbstractStore<V extends StoredArticle, T extends AbstractS
 	public void onDirty(Runnable dirtyNotifier) {
 		this.dirtyNotifier = dirtyNotifier == null ? Runnables.doNothing() : dirtyNotifier;
 	}
+
+	/**
+	 * Call after every change to content or capacity that should be saved.
+	 */
+	protected void notifyDirty() {
+		++version;
+		dirtyNotifier.run();
+	}
+
+	/**
+	 * Call after changes to content or capacity that don't need to be saved,
+	 * such as loading saved data or rolling back a transaction.
+	 */
+	protected void markChanged() {
+		++version;
+	}
+
+	/**
+	 * @return Content version, incremented whenever content or capacity changes
+	 */
+	public long version() {
+		return version;
+	}
+
+	/**
+	 * Returns the cached snapshot while the content version is unchanged, so repeated
+	 * calls between changes do not copy the store.
+	 */
+	@Override
+	public StoreSnapshot snapshot() {
+		StoreSnapshot result = snapshot;
+
+		if (result == null || result.version() != version) {
+			result = StoreSnapshot.of(this, version);
+			snapshot = result;
+		}
+
+		return result;
+	}
 }
@@ -62,6 +62,21 @@ public class ForwardingArticleFunction<T extends ArticleFunction> implements Art
 		return wrapped.apply(item, numerator, divisor, simulate);
 	}
 
+	@Override
+	public long query(Article item, long count) {
+		return wrapped.query(item, count);
+	}
+
+	@Override
+	public Fraction query(Article item, Fraction volume) {
+		return wrapped.query(item, volume);
+	}
+
+	@Override
+	public long query(Article item, long numerator, long divisor) {
+		return wrapped.query(item, numerator, divisor);
+	}
+
 	@Override
 	public boolean canApply() {
 		return wrapped.canApply();
@@ -28,6 +28,7 @@ import grondag.fluidity.api.fraction.Fraction;
 import grondag.fluidity.api.storage.ArticleFunction;
 import grondag.fluidity.api.storage.StorageEventStream;
 import grondag.fluidity.api.storage.Store;
+import grondag.fluidity.api.storage.StoreSnapshot;
 import grondag.fluidity.api.util.AmbiguousBoolean;
 
 @Experimental
@@ -117,6 +118,11 @@ public class ForwardingStore implements Store {
 		wrapped.readTag(tag);
 	}
 
+	@Override
+	public StoreSnapshot snapshot() {
+		return wrapped.snapshot();
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return wrapped.isEmpty();
@@ -15,6 +15,7 @@
  ******************************************************************************/
 package grondag.fluidity.base.storage.bulk;
 
+import java.util.List;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
@@ -28,6 +29,7 @@ import grondag.fluidity.Fluidity;
 import grondag.fluidity.api.article.Article;
 import grondag.fluidity.api.article.ArticleType;
 import grondag.fluidity.api.article.StoredArticleView;
+import grondag.fluidity.api.fraction.FixedFraction;
 import grondag.fluidity.api.fraction.Fraction;
 import grondag.fluidity.api.fraction.MutableFraction;
 import grondag.fluidity.api.storage.ArticleFunction;
@@ -48,9 +50,8 @@ import grondag.fluidity.base.storage.bulk.helper.BulkTrackingNotifier;
 public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStoredArticle, AggregateBulkStore> implements BulkStore, BulkStorageListener {
 	protected final BulkTrackingNotifier notifier;
 
-	protected final MutableFraction requested = new MutableFraction();
 	protected final MutableFraction delta = new MutableFraction();
-	protected final MutableFraction result = new MutableFraction();
+	protected long fixedResolution = 0;
 
 	public AggregateBulkStore(int startingSlotCount) {
 		super(startingSlotCount);
@@ -61,6 +62,27 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 		this(32);
 	}
 
+	/**
+	 * Opt-in mode for aggregates whose members all use a single resolution, for example
+	 * {@link FixedResolutionTank} members. When enabled, fractional requests are converted
+	 * once to units of the given resolution and routed to members through the primitive
+	 * numerator / divisor API, so no rational normalization happens per member.<p>
+	 *
+	 * Fractional requests that cannot be represented at the resolution are truncated.
+	 *
+	 * @param resolution units per whole, or zero to disable fixed-resolution mode
+	 * @return this store
+	 */
+	public AggregateBulkStore fixedResolution(long resolution) {
+		Preconditions.checkArgument(resolution >= 0, "Resolution must be >= 0. (%s)", resolution);
+		fixedResolution = resolution;
+		return this;
+	}
+
+	public long fixedResolution() {
+		return fixedResolution;
+	}
+
 	@Override
 	public ArticleFunction getConsumer() {
 		return consumer;
@@ -81,8 +103,6 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 		return true;
 	}
 
-	protected final ObjectArrayList<Store> searchList = new ObjectArrayList<>();
-
 	protected final Consumer consumer = new Consumer();
 
 	protected class Consumer implements BulkArticleFunction {
@@ -93,15 +113,17 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 
 		@Override
 		public Fraction apply(Article item, Fraction volume, boolean simulate) {
-			if (item.isNothing() || stores.isEmpty()) {
+			if (item.isNothing()) {
 				return Fraction.ZERO;
 			}
 
 			if(simulate) {
-				return acceptInner(item, volume, true).toImmutable();
+				return stores.isEmpty() ? Fraction.ZERO : acceptInner(item, volume, true).toImmutable();
 			} else {
 				try(Transaction tx = Transaction.open()) {
-					final Fraction result = acceptInner(item, volume, false).toImmutable();
+					// lock before reading membership or routing state
+					tx.enlistSelf(this);
+					final Fraction result = stores.isEmpty() ? Fraction.ZERO : acceptInner(item, volume, false).toImmutable();
 					tx.commit();
 					return result;
 				}
@@ -114,21 +136,98 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 			Preconditions.checkArgument(divisor >= 1, "Request to accept divisor < 1. (%s)", divisor);
 			Preconditions.checkNotNull(item, "Request to accept null article");
 
-			if (item.isNothing() || stores.isEmpty()) {
+			if (item.isNothing()) {
 				return 0;
 			}
 
 			if(simulate) {
-				return acceptInner(item, numerator, divisor, true);
+				return stores.isEmpty() ? 0 : acceptInner(item, numerator, divisor, true);
 			} else {
 				try(Transaction tx = Transaction.open()) {
-					final long result = acceptInner(item, numerator, divisor, false);
+					// lock before reading membership or routing state
+					tx.enlistSelf(this);
+					final long result = stores.isEmpty() ? 0 : acceptInner(item, numerator, divisor, false);
 					tx.commit();
 					return result;
 				}
 			}
 		}
 
+		@Override
+		public Fraction query(Article item, Fraction volume) {
+			if (item.isNothing() || stores.isEmpty()) {
+				return Fraction.ZERO;
+			}
+
+			if (fixedResolution != 0) {
+				return unitsToFraction(query(item, FixedFraction.toUnitsSaturated(volume, fixedResolution), fixedResolution));
+			}
+
+			// local instances - queries must not touch shared state
+			final MutableFraction result = new MutableFraction().deferNormalization(true);
+			final MutableFraction remaining = new MutableFraction(volume);
+			final Set<Store> holders = holders(item);
+			final ObjectArrayList<Store> candidates = new ObjectArrayList<>();
+			addAcceptCandidates(holders, candidates);
+			queryAccept(item, candidates, result, remaining);
+
+			if (!remaining.isZero()) {
+				candidates.clear();
+				addOtherAcceptCandidates(holders, candidates);
+				queryAccept(item, candidates, result, remaining);
+			}
+
+			return result.toImmutable();
+		}
+
+		@Override
+		public long query(Article item, long numerator, long divisor) {
+			Preconditions.checkArgument(numerator >= 0, "Request to accept negative amounts. (%s)", numerator);
+			Preconditions.checkArgument(divisor >= 1, "Request to accept divisor < 1. (%s)", divisor);
+			Preconditions.checkNotNull(item, "Request to accept null article");
+
+			if (item.isNothing() || stores.isEmpty()) {
+				return 0;
+			}
+
+			final Set<Store> holders = holders(item);
+			final ObjectArrayList<Store> candidates = new ObjectArrayList<>();
+			addAcceptCandidates(holders, candidates);
+			long result = queryAccept(item, candidates, 0, numerator, divisor);
+
+			if (result < numerator) {
+				candidates.clear();
+				addOtherAcceptCandidates(holders, candidates);
+				result = queryAccept(item, candidates, result, numerator, divisor);
+			}
+
+			return result;
+		}
+
+		protected void queryAccept(Article item, List<Store> candidates, MutableFraction result, MutableFraction remaining) {
+			for (final Store store : candidates) {
+				final Fraction f = store.getConsumer().query(item, remaining);
+				result.add(f);
+				remaining.subtract(f);
+
+				if (remaining.isZero()) {
+					break;
+				}
+			}
+		}
+
+		protected long queryAccept(Article item, List<Store> candidates, long result, long numerator, long divisor) {
+			for (final Store store : candidates) {
+				result += store.getConsumer().query(item, numerator - result, divisor);
+
+				if (result == numerator) {
+					break;
+				}
+			}
+
+			return result;
+		}
+
 		@Override
 		public Article suggestArticle(ArticleType<?> type) {
 			return type == null ? getAnyArticle().article() : getAnyMatch(type.viewPredicate()).article();
@@ -147,15 +246,17 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 		public Fraction apply(Article item, Fraction volume, boolean simulate) {
 			Preconditions.checkNotNull(item, "Request to accept null article");
 
-			if (item.isNothing() || isEmpty()) {
+			if (item.isNothing()) {
 				return Fraction.ZERO;
 			}
 
 			if(simulate) {
-				return supplyInner(item, volume, true).toImmutable();
+				return isEmpty() ? Fraction.ZERO : supplyInner(item, volume, true).toImmutable();
 			} else {
 				try(Transaction tx = Transaction.open()) {
-					final Fraction result = supplyInner(item, volume, false).toImmutable();
+					// lock before reading membership or stored amounts
+					tx.enlistSelf(this);
+					final Fraction result = isEmpty() ? Fraction.ZERO : supplyInner(item, volume, false).toImmutable();
 					tx.commit();
 					return result;
 				}
@@ -168,15 +269,17 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 			Preconditions.checkArgument(divisor >= 1, "Request to accept divisor < 1. (%s)", divisor);
 			Preconditions.checkNotNull(item, "Request to accept null article");
 
-			if (item.isNothing() || isEmpty()) {
+			if (item.isNothing()) {
 				return 0;
 			}
 
 			if(simulate) {
-				return supplyInner(item, numerator, divisor, true);
+				return isEmpty() ? 0 : supplyInner(item, numerator, divisor, true);
 			} else {
 				try(Transaction tx = Transaction.open()) {
-					final long result = supplyInner(item, numerator, divisor, false);
+					// lock before reading membership or stored amounts
+					tx.enlistSelf(this);
+					final long result = isEmpty() ? 0 : supplyInner(item, numerator, divisor, false);
 					tx.commit();
 					return result;
 				}
@@ -184,144 +287,165 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 		}
 
 		@Override
-		public Article suggestArticle(ArticleType<?> type) {
-			return type == null ? getAnyArticle().article() : getAnyMatch(type.viewPredicate()).article();
-		}
-	}
+		public Fraction query(Article item, Fraction volume) {
+			Preconditions.checkNotNull(item, "Request to supply null article");
 
-	protected Fraction acceptInner(Article item, Fraction volume, boolean simulate) {
-		result.set(0);
+			if (item.isNothing() || isEmpty()) {
+				return Fraction.ZERO;
+			}
 
-		final AggregateBulkStoredArticle article = articles.findOrCreateArticle(item);
+			if (fixedResolution != 0) {
+				return unitsToFraction(query(item, FixedFraction.toUnitsSaturated(volume, fixedResolution), fixedResolution));
+			}
 
-		// Try stores that already have article first
-		final Set<Store> existing = article.stores();
+			final AggregateBulkStoredArticle article = articles.get(item);
 
-		if(!existing.isEmpty()) {
-			// save non-existing stores here in case existing have insufficient capacity
-			searchList.clear();
+			if(article == null || article.isEmpty()) {
+				return Fraction.ZERO;
+			}
 
-			for (final Store store : stores) {
-				if(store.hasConsumer() && !store.isFull()) {
+			// local instances - queries must not touch shared state
+			final MutableFraction result = new MutableFraction().deferNormalization(true);
+			final MutableFraction remaining = new MutableFraction(volume);
 
-					if(existing.contains(store)) {
-						result.add(store.getConsumer().apply(item, delta.set(volume).subtract(result), simulate));
+			for (final Store store : article.stores()) {
+				if(store.hasSupplier()) {
+					final Fraction f = store.getSupplier().query(item, remaining);
+					result.add(f);
+					remaining.subtract(f);
 
-						if (result.equals(volume)) {
-							break;
-						}
-					} else {
-						searchList.add(store);
+					if (remaining.isZero()) {
+						break;
 					}
 				}
 			}
 
-			if (result.isLessThan(volume)) {
-				for (final Store store : searchList) {
-					final Fraction f = store.getConsumer().apply(item, delta.set(volume).subtract(result), simulate);
-
-					if(!f.isZero()) {
-						result.add(f);
+			return result.toImmutable();
+		}
 
-						// add new stores to per-article tracking
-						if(!simulate) {
-							existing.add(store);
-						}
+		@Override
+		public long query(Article item, long numerator, long divisor) {
+			Preconditions.checkArgument(numerator >= 0, "Request to supply negative amounts. (%s)", numerator);
+			Preconditions.checkArgument(divisor >= 1, "Request to supply divisor < 1. (%s)", divisor);
+			Preconditions.checkNotNull(item, "Request to supply null article");
 
-						if (result.equals(volume)) {
-							break;
-						}
-					}
-				}
+			if (item.isNothing() || isEmpty()) {
+				return 0;
 			}
 
-		} else {
-			for (final Store store : stores) {
-				if(store.hasConsumer() && !store.isFull()) {
-					final Fraction f = store.getConsumer().apply(item, delta.set(volume).subtract(result), simulate);
+			final AggregateBulkStoredArticle article = articles.get(item);
+
+			if(article == null || article.isEmpty()) {
+				return 0;
+			}
 
-					if(!f.isZero()) {
-						result.add(f);
+			long result = 0;
 
-						// add new stores to per-article tracking
-						if(!simulate) {
-							existing.add(store);
-						}
+			for (final Store store : article.stores()) {
+				if(store.hasSupplier()) {
+					result += store.getSupplier().query(item, numerator - result, divisor);
 
-						if (result.equals(volume)) {
-							break;
-						}
+					if (result == numerator) {
+						break;
 					}
 				}
 			}
+
+			return result;
 		}
 
-		return result;
+		@Override
+		public Article suggestArticle(ArticleType<?> type) {
+			return type == null ? getAnyArticle().article() : getAnyMatch(type.viewPredicate()).article();
+		}
 	}
 
-	protected long acceptInner(Article item, long numerator, long denominator, boolean simulate) {
-		long result = 0;
+	protected Fraction unitsToFraction(long units) {
+		final long whole = units / fixedResolution;
+		return Fraction.of(whole, units - whole * fixedResolution, fixedResolution);
+	}
 
-		final AggregateBulkStoredArticle article = articles.findOrCreateArticle(item);
+	// Inner methods use local working state so that concurrent callers can't share it.
+	// Non-simulated callers must hold the lock on this store (see apply methods).
 
-		// Try stores that already have article first
-		final Set<Store> existing = article.stores();
+	protected Fraction acceptInner(Article item, Fraction volume, boolean simulate) {
+		if (fixedResolution != 0) {
+			return unitsToFraction(acceptInner(item, FixedFraction.toUnitsSaturated(volume, fixedResolution), fixedResolution, simulate));
+		}
+
+		// accumulates partial results from members and is only read once at the end
+		final MutableFraction result = new MutableFraction().deferNormalization(true);
+		final MutableFraction requested = new MutableFraction(volume);
+
+		// simulation must not add the article to the index
+		final Set<Store> existing = simulate ? holders(item) : articles.findOrCreateArticle(item).stores();
+
+		// member notifications update the routing index as we go, so work from a copy
+		final ObjectArrayList<Store> searchList = new ObjectArrayList<>();
+		addAcceptCandidates(existing, searchList);
+		acceptFromSearchList(item, existing, searchList, result, requested, simulate);
 
-		if(!existing.isEmpty()) {
-			// save non-existing stores here in case existing have insufficient capacity
+		if (!requested.isZero()) {
 			searchList.clear();
+			addOtherAcceptCandidates(existing, searchList);
+			acceptFromSearchList(item, existing, searchList, result, requested, simulate);
+		}
 
-			for (final Store store : stores) {
-				if(store.hasConsumer() && !store.isFull()) {
+		return result;
+	}
 
-					if(existing.contains(store)) {
-						result += store.getConsumer().apply(item, numerator - result, denominator, simulate);
+	protected void acceptFromSearchList(Article item, Set<Store> existing, List<Store> searchList, MutableFraction result, MutableFraction requested, boolean simulate) {
+		for (final Store store : searchList) {
+			final Fraction f = store.getConsumer().apply(item, requested, simulate);
 
-						if (result == numerator) {
-							break;
-						}
-					} else {
-						searchList.add(store);
-					}
+			if(!f.isZero()) {
+				result.add(f);
+				requested.subtract(f);
+
+				// add new stores to per-article tracking
+				if(!simulate) {
+					existing.add(store);
+				}
+
+				if (requested.isZero()) {
+					break;
 				}
 			}
+		}
+	}
 
-			if (result < numerator) {
-				for (final Store store : searchList) {
-					final long delta = store.getConsumer().apply(item, numerator - result, denominator, simulate);
+	protected long acceptInner(Article item, long numerator, long denominator, boolean simulate) {
+		// simulation must not add the article to the index
+		final Set<Store> existing = simulate ? holders(item) : articles.findOrCreateArticle(item).stores();
 
-					if(delta != 0) {
-						result += delta;
+		// member notifications update the routing index as we go, so work from a copy
+		final ObjectArrayList<Store> searchList = new ObjectArrayList<>();
+		addAcceptCandidates(existing, searchList);
+		long result = acceptFromSearchList(item, existing, searchList, 0, numerator, denominator, simulate);
 
-						// add new stores to per-article tracking
-						if(!simulate) {
-							existing.add(store);
-						}
+		if (result < numerator) {
+			searchList.clear();
+			addOtherAcceptCandidates(existing, searchList);
+			result = acceptFromSearchList(item, existing, searchList, result, numerator, denominator, simulate);
+		}
 
-						if (result == numerator) {
-							break;
-						}
-					}
-				}
-			}
+		return result;
+	}
 
-		} else {
-			for (final Store store : stores) {
-				if(store.hasConsumer() && !store.isFull()) {
-					final long delta = store.getConsumer().apply(item, numerator - result, denominator, simulate);
+	protected long acceptFromSearchList(Article item, Set<Store> existing, List<Store> searchList, long result, long numerator, long denominator, boolean simulate) {
+		for (final Store store : searchList) {
+			final long delta = store.getConsumer().apply(item, numerator - result, denominator, simulate);
 
-					if(delta != 0) {
-						result += delta;
+			if(delta != 0) {
+				result += delta;
 
-						// add new stores to per-article tracking
-						if(!simulate) {
-							existing.add(store);
-						}
+				// add new stores to per-article tracking
+				if(!simulate) {
+					existing.add(store);
+				}
 
-						if (result == numerator) {
-							break;
-						}
-					}
+				if (result == numerator) {
+					break;
 				}
 			}
 		}
@@ -330,29 +454,39 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 	}
 
 	protected Fraction supplyInner(Article item, Fraction volume, boolean simulate) {
+		if (fixedResolution != 0) {
+			return unitsToFraction(supplyInner(item, FixedFraction.toUnitsSaturated(volume, fixedResolution), fixedResolution, simulate));
+		}
+
 		final AggregateBulkStoredArticle article = articles.get(item);
 
 		if(article == null || article.isEmpty()) {
 			return Fraction.ZERO;
 		}
 
-		result.set(0);
+		// accumulates partial results from members and is only read once at the end
+		final MutableFraction result = new MutableFraction().deferNormalization(true);
+		final MutableFraction requested = new MutableFraction(volume);
 
 		final Set<Store> existing = article.stores();
 
-		for (final Store store : existing) {
+		// members are removed from the holders as they empty, so work from a copy
+		final ObjectArrayList<Store> searchList = new ObjectArrayList<>(existing);
+
+		for (final Store store : searchList) {
 			if(store.hasSupplier()) {
-				final Fraction f = store.getSupplier().apply(item, delta.set(volume).subtract(result), simulate);
+				final Fraction f = store.getSupplier().apply(item, requested, simulate);
 
 				if(!f.isZero()) {
 					result.add(f);
+					requested.subtract(f);
 
 					// remove from per-article tracking if store no longer contains
 					if(!simulate && store.amountOf(item).isZero()) {
 						existing.remove(store);
 					}
 
-					if (result.equals(volume)) {
+					if (requested.isZero()) {
 						break;
 					}
 				}
@@ -373,7 +507,10 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 
 		final Set<Store> existing = article.stores();
 
-		for (final Store store : existing) {
+		// members are removed from the holders as they empty, so work from a copy
+		final ObjectArrayList<Store> searchList = new ObjectArrayList<>(existing);
+
+		for (final Store store : searchList) {
 			if(store.hasSupplier()) {
 				final long delta = store.getSupplier().apply(item, numerator - result, denominator, simulate);
 
@@ -432,9 +569,11 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 
 	@Override
 	public void onAccept(Store storage, int slot, Article item, Fraction delta, Fraction newVolume) {
+		markChanged();
 		final AggregateBulkStoredArticle article = articles.findOrCreateArticle(item);
 		article.add(delta);
 		article.stores().add(storage);
+		updateRouting(storage);
 		notifier.notifyAccept(article.article(), article.handle(), delta, article.amount());
 	}
 
@@ -443,6 +582,7 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 
 	@Override
 	public void onSupply(Store storage, int slot, Article item, Fraction delta, Fraction newVolume) {
+		markChanged();
 		final AggregateBulkStoredArticle article = articles.get(item);
 
 		if(article == null) {
@@ -469,12 +609,16 @@ public class AggregateBulkStore extends AbstractAggregateStore<AggregateBulkStor
 			article.stores().remove(storage);
 		}
 
+		updateRouting(storage);
+
 		article.subtract(delta);
 		notifier.notifySupply(article.article(), article.handle(), delta, article.amount());
 	}
 
 	@Override
 	public void onCapacityChange(Store storage, Fraction capacityDelta) {
+		markChanged();
+		updateRouting(storage);
 		notifier.addToCapacity(capacityDelta);
 	}
 
@@ -45,6 +45,11 @@ public interface BulkStore extends Store {
 		default long apply(Article item, long count, boolean simulate) {
 			return apply(item, count, 1, simulate);
 		}
+
+		@Override
+		default long query(Article item, long count) {
+			return query(item, count, 1);
+		}
 	}
 }
 
@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.storage.bulk;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.LongMath;
+import com.mojang.datafixers.util.Pair;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import net.minecraft.nbt.NbtCompound;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.article.ArticleType;
+import grondag.fluidity.api.article.StoredArticleView;
+import grondag.fluidity.api.fraction.FixedFraction;
+import grondag.fluidity.api.fraction.Fraction;
+import grondag.fluidity.api.fraction.MutableFraction;
+import grondag.fluidity.api.storage.ArticleFunction;
+import grondag.fluidity.api.storage.StorageListener;
+import grondag.fluidity.base.article.StoredBulkArticle;
+import grondag.fluidity.base.article.StoredBulkArticleView;
+import grondag.fluidity.base.storage.AbstractLazyRollbackStore;
+
+/**
+ * Single-article tank that tracks content as a {@code long} number of units at a
+ * fixed resolution. Functionally equivalent to {@link SimpleTank}, but requests made
+ * in the tank's own resolution never touch {@code Fraction} math.<p>
+ *
+ * Requests that cannot be represented at the tank resolution are truncated to the
+ * nearest representable amount. Use {@link SimpleTank} for tanks that must accept
+ * arbitrary fractions exactly.
+ */
+@Experimental
+public class FixedResolutionTank extends AbstractLazyRollbackStore<StoredBulkArticle, FixedResolutionTank> implements BulkStore {
+	protected final long resolution;
+	protected long quantity;
+	protected long capacity;
+	protected Article article = Article.NOTHING;
+	protected final MutableFraction amount = new MutableFraction();
+	protected final MutableFraction volume = new MutableFraction();
+	protected final MutableFraction calc = new MutableFraction();
+	protected final View view = new View();
+
+	/**
+	 * @param resolution number of units in one whole. Must be >= 1.
+	 * @param capacity tank capacity in units
+	 */
+	public FixedResolutionTank(long resolution, long capacity) {
+		Preconditions.checkArgument(resolution >= 1, "Resolution must be >= 1. (%s)", resolution);
+		this.resolution = resolution;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param resolution number of units in one whole. Must be >= 1.
+	 * @param capacity tank capacity - truncated if not representable at the given resolution
+	 */
+	public FixedResolutionTank(long resolution, Fraction capacity) {
+		this(resolution, FixedFraction.toUnits(capacity, resolution));
+	}
+
+	public long resolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return current content in units of {@code 1 / resolution()}
+	 */
+	public long units() {
+		return quantity;
+	}
+
+	/**
+	 * @return capacity in units of {@code 1 / resolution()}
+	 */
+	public long capacityUnits() {
+		return capacity;
+	}
+
+	@Override
+	public ArticleFunction getConsumer() {
+		return consumer;
+	}
+
+	@Override
+	public boolean hasConsumer() {
+		return true;
+	}
+
+	@Override
+	public ArticleFunction getSupplier() {
+		return supplier;
+	}
+
+	@Override
+	public boolean hasSupplier() {
+		return true;
+	}
+
+	@Override
+	public boolean isFull() {
+		return quantity >= capacity;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return quantity == 0;
+	}
+
+	@Override
+	public int handleCount() {
+		return 1;
+	}
+
+	@Override
+	public StoredArticleView view(int handle) {
+		return handle == 0 ? view : StoredArticleView.EMPTY;
+	}
+
+	/**
+	 * Converts a request expressed as numerator / divisor to the largest number of tank units
+	 * that is not more than the request and also maps back to a whole number of divisor units.
+	 */
+	protected long requestToUnits(long numerator, long divisor) {
+		// requests may be arbitrarily large, so products saturate instead of wrapping
+		if (divisor == resolution) {
+			return numerator;
+		} else if (resolution % divisor == 0) {
+			return LongMath.saturatedMultiply(numerator, resolution / divisor);
+		} else {
+			// granularity of divisor units that map exactly to tank units
+			final long gcd = LongMath.gcd(resolution, divisor);
+			final long step = divisor / gcd;
+			return LongMath.saturatedMultiply(numerator / step, resolution / gcd);
+		}
+	}
+
+	/** Inverse of {@link #requestToUnits(long, long)}. Input is assumed to be exactly representable. */
+	protected long unitsToRequest(long units, long divisor) {
+		return divisor == resolution ? units : FixedFraction.multiplyDivide(units, divisor, resolution);
+	}
+
+	/** Largest number of units not exceeding the given limit that maps to a whole number of divisor units. */
+	protected long limitUnits(long limit, long divisor) {
+		if (divisor == resolution) {
+			return limit;
+		} else {
+			return requestToUnits(FixedFraction.multiplyDivide(limit, divisor, resolution), divisor);
+		}
+	}
+
+	protected Fraction unitsToFraction(long units) {
+		return FixedFraction.setFraction(calc, units, resolution);
+	}
+
+	/** For queries, which must not use the shared {@code calc} instance. */
+	protected Fraction unitsToImmutable(long units) {
+		final long whole = units / resolution;
+		return Fraction.of(whole, units - whole * resolution, resolution);
+	}
+
+	protected void notifyAccept(long units) {
+		if (!listeners.isEmpty()) {
+			final Fraction delta = unitsToFraction(units).toImmutable();
+			final Fraction newAmount = unitsToImmutable(quantity);
+			listeners.forEach(l -> l.onAccept(FixedResolutionTank.this, 0, article, delta, newAmount));
+		}
+	}
+
+	protected void notifySupply(Article item, long units) {
+		if (!listeners.isEmpty()) {
+			final Fraction delta = unitsToFraction(units).toImmutable();
+			final Fraction newAmount = unitsToImmutable(quantity);
+			listeners.forEach(l -> l.onSupply(FixedResolutionTank.this, 0, item, delta, newAmount));
+		}
+	}
+
+	protected long acceptUnits(Article item, long units, boolean simulate) {
+		if (!simulate) {
+			rollbackHandler.enlist();
+		}
+
+		if (item == Article.NOTHING || units <= 0 || (!item.equals(article) && article != Article.NOTHING) || !filter.test(item)) {
+			return 0;
+		}
+
+		final long result = Math.min(units, capacity - quantity);
+
+		if (result <= 0) {
+			return 0;
+		}
+
+		if (!simulate) {
+			rollbackHandler.prepareIfNeeded();
+
+			if (article.isNothing()) {
+				article = item;
+			}
+
+			quantity += result;
+			notifyDirty();
+			notifyAccept(result);
+		}
+
+		return result;
+	}
+
+	protected long supplyUnits(Article item, long units, boolean simulate) {
+		if (!simulate) {
+			rollbackHandler.enlist();
+		}
+
+		if (item == Article.NOTHING || !item.equals(article) || quantity == 0 || units <= 0) {
+			return 0;
+		}
+
+		final long result = Math.min(units, quantity);
+
+		if (!simulate) {
+			rollbackHandler.prepareIfNeeded();
+			quantity -= result;
+			notifyDirty();
+			notifySupply(item, result);
+
+			if (quantity == 0) {
+				article = Article.NOTHING;
+			}
+		}
+
+		return result;
+	}
+
+	protected final Supplier supplier = new Supplier();
+
+	protected class Supplier implements BulkArticleFunction {
+		@Override
+		public Fraction apply(Article item, Fraction volume, boolean simulate) {
+			Preconditions.checkArgument(!volume.isNegative(), "Request to supply negative volume. (%s)", volume);
+			return unitsToFraction(supplyUnits(item, FixedFraction.toUnitsSaturated(volume, resolution), simulate));
+		}
+
+		@Override
+		public Fraction query(Article item, Fraction volume) {
+			Preconditions.checkArgument(!volume.isNegative(), "Request to supply negative volume. (%s)", volume);
+			return unitsToImmutable(supplyUnits(item, FixedFraction.toUnitsSaturated(volume, resolution), true));
+		}
+
+		@Override
+		public long apply(Article item, long numerator, long divisor, boolean simulate) {
+			Preconditions.checkArgument(numerator >= 0, "Request to supply negative volume. (%s)", numerator);
+			Preconditions.checkArgument(divisor >= 1, "Divisor must be >= 1. (%s)", divisor);
+
+			if (numerator == 0 || quantity == 0) {
+				return 0;
+			}
+
+			final long units = Math.min(requestToUnits(numerator, divisor), limitUnits(quantity, divisor));
+			return unitsToRequest(supplyUnits(item, units, simulate), divisor);
+		}
+
+		@Override
+		public TransactionDelegate getTransactionDelegate() {
+			return FixedResolutionTank.this;
+		}
+
+		@Override
+		public Article suggestArticle(ArticleType<?> type) {
+			return type == null ? getAnyArticle().article() : getAnyMatch(type.viewPredicate()).article();
+		}
+	}
+
+	protected final Consumer consumer = new Consumer();
+
+	protected class Consumer implements BulkArticleFunction {
+		@Override
+		public Fraction apply(Article item, Fraction volume, boolean simulate) {
+			Preconditions.checkArgument(!volume.isNegative(), "Request to accept negative volume. (%s)", volume);
+			return unitsToFraction(acceptUnits(item, FixedFraction.toUnitsSaturated(volume, resolution), simulate));
+		}
+
+		@Override
+		public Fraction query(Article item, Fraction volume) {
+			Preconditions.checkArgument(!volume.isNegative(), "Request to accept negative volume. (%s)", volume);
+			return unitsToImmutable(acceptUnits(item, FixedFraction.toUnitsSaturated(volume, resolution), true));
+		}
+
+		@Override
+		public long apply(Article item, long numerator, long divisor, boolean simulate) {
+			Preconditions.checkArgument(numerator >= 0, "Request to accept negative volume. (%s)", numerator);
+			Preconditions.checkArgument(divisor >= 1, "Divisor must be >= 1. (%s)", divisor);
+
+			if (numerator == 0 || quantity >= capacity) {
+				return 0;
+			}
+
+			final long units = Math.min(requestToUnits(numerator, divisor), limitUnits(capacity - quantity, divisor));
+			return unitsToRequest(acceptUnits(item, units, simulate), divisor);
+		}
+
+		@Override
+		public TransactionDelegate getTransactionDelegate() {
+			return FixedResolutionTank.this;
+		}
+
+		@Override
+		public Article suggestArticle(ArticleType<?> type) {
+			return type == null ? getAnyArticle().article() : getAnyMatch(type.viewPredicate()).article();
+		}
+	}
+
+	public void writeTag(NbtCompound tag) {
+		tag.putLong("resolution", resolution);
+		tag.putLong("capacity", capacity);
+		tag.putLong("quantity", quantity);
+		tag.put("art", article.toTag());
+	}
+
+	@Override
+	public NbtCompound writeTag() {
+		final NbtCompound result = new NbtCompound();
+		writeTag(result);
+		return result;
+	}
+
+	@Override
+	public void readTag(NbtCompound tag) {
+		final long savedResolution = Math.max(1, tag.getLong("resolution"));
+		capacity = new FixedFraction(tag.getLong("capacity"), savedResolution).toLong(resolution);
+		quantity = new FixedFraction(tag.getLong("quantity"), savedResolution).toLong(resolution);
+		article = quantity == 0 ? Article.NOTHING : Article.fromTag(tag.get("art"));
+		markChanged();
+	}
+
+	protected class View implements StoredBulkArticleView {
+		@Override
+		public int handle() {
+			return 0;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return quantity == 0;
+		}
+
+		@Override
+		public Fraction amount() {
+			return FixedResolutionTank.this.amount();
+		}
+
+		@Override
+		public long count() {
+			return quantity / resolution;
+		}
+
+		@Override
+		public Article article() {
+			return article;
+		}
+	}
+
+	@Override
+	protected Object createRollbackState() {
+		return Pair.of(article, quantity);
+	}
+
+	@Override
+	protected void applyRollbackState(Object state, boolean isCommitted) {
+		if(!isCommitted) {
+			@SuppressWarnings("unchecked")
+			final Pair<Article, Long> pair = (Pair<Article, Long>) state;
+			final Article bulkItem = pair.getFirst();
+			final long newQuantity = pair.getSecond();
+
+			if(bulkItem == article) {
+				if(newQuantity > quantity) {
+					acceptUnits(bulkItem, newQuantity - quantity, false);
+				} else if (newQuantity < quantity) {
+					supplyUnits(bulkItem, quantity - newQuantity, false);
+				}
+			} else {
+				supplyUnits(article, quantity, false);
+				acceptUnits(bulkItem, newQuantity, false);
+			}
+		}
+	}
+
+	@Override
+	protected void sendFirstListenerUpdate(StorageListener listener) {
+		listener.onAccept(this, 0, article, amount(), amount());
+	}
+
+	@Override
+	protected void sendLastListenerUpdate(StorageListener listener) {
+		listener.onSupply(this, 0, article, amount(), Fraction.ZERO);
+	}
+
+	@Override
+	protected void onListenersEmpty() {
+		// NOOP
+	}
+
+	@Override
+	public void clear() {
+		if (quantity != 0) {
+			supplyUnits(article, quantity, false);
+		}
+	}
+
+	@Override
+	public long count() {
+		return quantity / resolution;
+	}
+
+	@Override
+	public long capacity() {
+		return capacity / resolution;
+	}
+
+	@Override
+	public double usage() {
+		return capacity == 0 ? 0 : (double) quantity / (double) capacity;
+	}
+
+	/**
+	 * Not safe to retain - value is updated on each call.
+	 */
+	@Override
+	public Fraction amount() {
+		return FixedFraction.setFraction(amount, quantity, resolution);
+	}
+
+	/**
+	 * Not safe to retain - value is updated on each call.
+	 */
+	@Override
+	public Fraction volume() {
+		return FixedFraction.setFraction(volume, capacity, resolution);
+	}
+}
@@ -90,6 +90,14 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 
 		@Override
 		public Fraction apply(Article item, Fraction volume, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
+			if (simulate) {
+				return query(item, volume);
+			}
+
 			Preconditions.checkArgument(!volume.isNegative(), "Request to supply negative volume. (%s)", volume);
 
 			if (item == Article.NOTHING || !item.equals(article) || quantity.isZero() || volume.isZero()) {
@@ -98,46 +106,41 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 
 			calc.set(quantity.isLessThan(volume) ? quantity : volume);
 
-			if (!simulate) {
-				rollbackHandler.prepareIfNeeded();
-				quantity.subtract(calc);
-				dirtyNotifier.run();
-				listeners.forEach(l -> l.onSupply(SimpleTank.this, 0, article, calc, quantity));
+			rollbackHandler.prepareIfNeeded();
+			quantity.subtract(calc);
+			notifyDirty();
+			listeners.forEach(l -> l.onSupply(SimpleTank.this, 0, article, calc, quantity));
 
-				if(quantity.isZero()) {
-					article = Article.NOTHING;
-				}
+			if(quantity.isZero()) {
+				article = Article.NOTHING;
 			}
 
 			return calc;
 		}
 
 		@Override
-		public long apply(Article item, long numerator, long divisor, boolean simulate) {
-			Preconditions.checkArgument(numerator >= 0, "Request to supply negative volume. (%s)", numerator);
-			Preconditions.checkArgument(divisor >= 1, "Divisor must be >= 1. (%s)", divisor);
+		public Fraction query(Article item, Fraction volume) {
+			Preconditions.checkArgument(!volume.isNegative(), "Request to supply negative volume. (%s)", volume);
 
-			if (item == Article.NOTHING || !item.equals(article) || quantity.isZero() || numerator == 0) {
-				return 0;
+			if (item == Article.NOTHING || !item.equals(article) || quantity.isZero() || volume.isZero()) {
+				return Fraction.ZERO;
 			}
 
-			calc.set(quantity);
-			calc.roundDown(divisor);
-
-			long result = calc.toLong(divisor);
+			return quantity.isLessThan(volume) ? quantity.toImmutable() : volume.toImmutable();
+		}
 
-			if (result == 0) {
-				return 0;
+		@Override
+		public long apply(Article item, long numerator, long divisor, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
 			}
 
-			if (result > numerator) {
-				result = numerator;
-			}
+			final long result = query(item, numerator, divisor);
 
-			if (!simulate) {
+			if (result > 0 && !simulate) {
 				rollbackHandler.prepareIfNeeded();
 				quantity.subtract(result, divisor);
-				dirtyNotifier.run();
+				notifyDirty();
 
 				if(!listeners.isEmpty()) {
 					calc.set(result, divisor);
@@ -152,6 +155,18 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 			return result;
 		}
 
+		@Override
+		public long query(Article item, long numerator, long divisor) {
+			Preconditions.checkArgument(numerator >= 0, "Request to supply negative volume. (%s)", numerator);
+			Preconditions.checkArgument(divisor >= 1, "Divisor must be >= 1. (%s)", divisor);
+
+			if (item == Article.NOTHING || !item.equals(article) || quantity.isZero() || numerator == 0) {
+				return 0;
+			}
+
+			return Math.min(numerator, quantity.toLong(divisor));
+		}
+
 		@Override
 		public TransactionDelegate getTransactionDelegate() {
 			return SimpleTank.this;
@@ -169,16 +184,20 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 
 		@Override
 		public Fraction apply(Article item, Fraction volume, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
+			if (simulate) {
+				return query(item, volume);
+			}
+
 			Preconditions.checkArgument(!volume.isNegative(), "Request to accept negative volume. (%s)", volume);
 
 			if (item == Article.NOTHING || volume.isZero()|| (!item.equals(article) && article != Article.NOTHING) || !filter.test(item)) {
 				return Fraction.ZERO;
 			}
 
-			if(article.isNothing()) {
-				article = item;
-			}
-
 			// compute available space
 			calc.set(capacity);
 			calc.subtract(quantity);
@@ -193,49 +212,52 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 				calc.set(volume);
 			}
 
-			if (!simulate) {
-				rollbackHandler.prepareIfNeeded();
-				quantity.add(calc);
-				dirtyNotifier.run();
-				listeners.forEach(l -> l.onSupply(SimpleTank.this, 0, article, calc, quantity));
+			if(article.isNothing()) {
+				article = item;
 			}
 
+			rollbackHandler.prepareIfNeeded();
+			quantity.add(calc);
+			notifyDirty();
+			listeners.forEach(l -> l.onSupply(SimpleTank.this, 0, article, calc, quantity));
+
 			return calc;
 		}
 
 		@Override
-		public long apply(Article item, long numerator, long divisor, boolean simulate) {
-			Preconditions.checkArgument(numerator >= 0, "Request to accept negative volume. (%s)", numerator);
-			Preconditions.checkArgument(divisor >= 1, "Divisor must be >= 1. (%s)", divisor);
+		public Fraction query(Article item, Fraction volume) {
+			Preconditions.checkArgument(!volume.isNegative(), "Request to accept negative volume. (%s)", volume);
 
-			if (item == Article.NOTHING || numerator == 0 || (!item.equals(article) && article != Article.NOTHING) || !filter.test(item)) {
-				return 0;
+			if (item == Article.NOTHING || volume.isZero()|| (!item.equals(article) && article != Article.NOTHING) || !filter.test(item)) {
+				return Fraction.ZERO;
 			}
 
-			if(article.isNothing()) {
-				article = item;
-			}
+			// local instance - queries may run on any thread and must not touch shared state
+			final MutableFraction space = new MutableFraction(capacity).subtract(quantity);
 
-			// compute available space
-			calc.set(capacity);
-			calc.subtract(quantity);
+			if (space.isZero()) {
+				return Fraction.ZERO;
+			}
 
-			long result = calc.toLong(divisor);
+			return space.isGreaterThanOrEqual(volume) ? volume.toImmutable() : space.toImmutable();
+		}
 
-			// can't accept if full
-			if (result == 0) {
-				return 0;
+		@Override
+		public long apply(Article item, long numerator, long divisor, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
 			}
 
-			// can't accept more than we got
-			if (result > numerator) {
-				result = numerator;
-			}
+			final long result = query(item, numerator, divisor);
+
+			if (result > 0 && !simulate) {
+				if(article.isNothing()) {
+					article = item;
+				}
 
-			if (!simulate) {
 				rollbackHandler.prepareIfNeeded();
 				quantity.add(result, divisor);
-				dirtyNotifier.run();
+				notifyDirty();
 
 				if(!listeners.isEmpty()) {
 					calc.set(result, divisor);
@@ -246,6 +268,19 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 			return result;
 		}
 
+		@Override
+		public long query(Article item, long numerator, long divisor) {
+			Preconditions.checkArgument(numerator >= 0, "Request to accept negative volume. (%s)", numerator);
+			Preconditions.checkArgument(divisor >= 1, "Divisor must be >= 1. (%s)", divisor);
+
+			if (item == Article.NOTHING || numerator == 0 || (!item.equals(article) && article != Article.NOTHING) || !filter.test(item)) {
+				return 0;
+			}
+
+			final long result = new MutableFraction(capacity).subtract(quantity).toLong(divisor);
+			return Math.min(result, numerator);
+		}
+
 		@Override
 		public TransactionDelegate getTransactionDelegate() {
 			return SimpleTank.this;
@@ -275,6 +310,7 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 		capacity = new Fraction(tag.getCompound("capacity"));
 		quantity.readTag(tag.getCompound("quantity"));
 		article = Article.fromTag(tag.get("art"));
+		markChanged();
 	}
 
 	protected class View implements StoredBulkArticleView {
@@ -349,7 +385,7 @@ public class SimpleTank extends AbstractLazyRollbackStore<StoredBulkArticle, Sim
 		rollbackHandler.prepareIfNeeded();
 		listeners.forEach(l -> l.onSupply(this, 0, article, quantity, Fraction.ZERO));
 		quantity.set(0);
-		dirtyNotifier.run();
+		notifyDirty();
 	}
 
 	@Override
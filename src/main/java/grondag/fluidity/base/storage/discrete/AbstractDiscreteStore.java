@@ -16,7 +16,6 @@
 package grondag.fluidity.base.storage.discrete;
 
 import com.google.common.base.Preconditions;
-import it.unimi.dsi.fastutil.objects.Object2LongMap.Entry;
 import org.apache.commons.lang3.ObjectUtils;
 import org.jetbrains.annotations.ApiStatus.Experimental;
 
@@ -31,19 +30,24 @@ import grondag.fluidity.api.storage.StorageListener;
 import grondag.fluidity.base.article.StoredDiscreteArticle;
 import grondag.fluidity.base.storage.AbstractLazyRollbackStore;
 import grondag.fluidity.base.storage.discrete.FixedDiscreteStore.FixedDiscreteArticleFunction;
-import grondag.fluidity.base.storage.discrete.helper.DiscreteTrackingJournal;
+import grondag.fluidity.base.storage.discrete.helper.DiscreteTagWriter;
 import grondag.fluidity.base.storage.discrete.helper.DiscreteTrackingNotifier;
 import grondag.fluidity.base.storage.helper.AbstractArticleManager;
+import grondag.fluidity.base.transact.UndoJournal;
 import grondag.fluidity.impl.article.ArticleImpl;
 
 @Experimental
 public abstract class AbstractDiscreteStore<T extends AbstractDiscreteStore<T>> extends AbstractLazyRollbackStore<StoredDiscreteArticle, T> implements DiscreteStore {
 	protected final AbstractArticleManager<StoredDiscreteArticle> articles;
 	protected final DiscreteTrackingNotifier notifier;
+	protected final UndoJournal undoJournal = new UndoJournal(this::undo);
+	protected final DiscreteTagWriter tagWriter = new DiscreteTagWriter(this);
 
 	protected AbstractDiscreteStore(int startingHandleCount, long capacity, AbstractArticleManager<StoredDiscreteArticle> articles) {
 		this.articles = articles;
 		notifier = new DiscreteTrackingNotifier(capacity, this);
+		notifier.setUndoJournal(undoJournal);
+		notifier.setTagWriter(tagWriter);
 	}
 
 	@Override
@@ -66,23 +70,16 @@ public abstract class AbstractDiscreteStore<T extends AbstractDiscreteStore<T>>
 		return true;
 	}
 
+	/**
+	 * Only handles changed since the last call are serialized again.
+	 * The item list may be shared with earlier results and must not be modified.
+	 */
 	@Override
 	public NbtCompound writeTag() {
 		final NbtCompound result = new NbtCompound();
 
 		if(!isEmpty()) {
-			final NbtList list = new NbtList();
-			final int limit = articles.handleCount();
-
-			for (int i = 0; i < limit; i++) {
-				final StoredDiscreteArticle a = articles.get(i);
-
-				if(!a.isEmpty()) {
-					list.add(a.toTag());
-				}
-			}
-
-			result.put(AbstractDiscreteStore.TAG_ITEMS, list);
+			result.put(AbstractDiscreteStore.TAG_ITEMS, tagWriter.write());
 		}
 
 		return result;
@@ -150,6 +147,8 @@ public abstract class AbstractDiscreteStore<T extends AbstractDiscreteStore<T>>
 	@Override
 	protected void onListenersEmpty() {
 		articles.compact();
+		// compaction can move articles to different handles
+		tagWriter.markAllDirty();
 	}
 
 	protected final FixedDiscreteArticleFunction consumer = createConsumer();
@@ -161,26 +160,35 @@ public abstract class AbstractDiscreteStore<T extends AbstractDiscreteStore<T>>
 	protected class Consumer implements FixedDiscreteArticleFunction {
 		@Override
 		public long apply(Article item, long count, boolean simulate) {
-			Preconditions.checkArgument(count >= 0, "Request to accept negative items. (%s)", count);
-			Preconditions.checkNotNull(item, "Request to accept null item");
-
-			if (item.isNothing() || count == 0 || !filter.test(item)) {
-				return 0;
+			if (!simulate) {
+				rollbackHandler.enlist();
 			}
 
-			final long result = Math.min(count, notifier.capacity() - notifier.count());
+			final long result = query(item, count);
 
 			if(result > 0 && !simulate) {
 				rollbackHandler.prepareIfNeeded();
 				final StoredDiscreteArticle article = articles.findOrCreateArticle(item);
 				article.addToCount(result);
 				notifier.notifyAccept(article, result);
-				dirtyNotifier.run();
+				notifyDirty();
 			}
 
 			return result;
 		}
 
+		@Override
+		public long query(Article item, long count) {
+			Preconditions.checkArgument(count >= 0, "Request to accept negative items. (%s)", count);
+			Preconditions.checkNotNull(item, "Request to accept null item");
+
+			if (item.isNothing() || count == 0 || !filter.test(item)) {
+				return 0;
+			}
+
+			return Math.min(count, notifier.capacity() - notifier.count());
+		}
+
 		@Override
 		public TransactionDelegate getTransactionDelegate() {
 			return AbstractDiscreteStore.this;
@@ -207,6 +215,30 @@ public abstract class AbstractDiscreteStore<T extends AbstractDiscreteStore<T>>
 	protected class Supplier implements FixedDiscreteArticleFunction {
 		@Override
 		public long apply(Article item, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
+			final long result = query(item, count);
+
+			if(result > 0 && !simulate) {
+				final StoredDiscreteArticle article = articles.get(item);
+				rollbackHandler.prepareIfNeeded();
+				notifier.notifySupply(article, result);
+				article.addToCount(-result);
+
+				if(article.isEmpty()) {
+					articles.release(article);
+				}
+
+				notifyDirty();
+			}
+
+			return result;
+		}
+
+		@Override
+		public long query(Article item, long count) {
 			Preconditions.checkArgument(count >= 0, "Request to supply negative items. (%s)", count);
 			Preconditions.checkNotNull(item, "Request to supply null item");
 
@@ -220,16 +252,7 @@ public abstract class AbstractDiscreteStore<T extends AbstractDiscreteStore<T>>
 				return 0;
 			}
 
-			final long result = Math.min(count, article.count());
-
-			if(result > 0 && !simulate) {
-				rollbackHandler.prepareIfNeeded();
-				notifier.notifySupply(article, result);
-				article.addToCount(-result);
-				dirtyNotifier.run();
-			}
-
-			return result;
+			return Math.min(count, article.count());
 		}
 
 		@Override
@@ -270,45 +293,30 @@ public abstract class AbstractDiscreteStore<T extends AbstractDiscreteStore<T>>
 		}
 
 		articles.clear();
-		dirtyNotifier.run();
+		tagWriter.markAllDirty();
+		notifyDirty();
 	}
 
 	@Override
 	protected Object createRollbackState() {
-		return notifier.beginNewJournalAndReturnPrior();
+		notifier.enterTransaction();
+		return undoJournal.prepare();
 	}
 
 	@Override
 	protected void applyRollbackState(Object state, boolean isCommitted) {
-		final DiscreteTrackingJournal journal = notifier.journal();
-
-		if(!isCommitted && journal != null) {
-			if(journal.capacityDelta < 0) {
-				notifier.addToCapacity(-journal.capacityDelta);
-			}
-
-			for(final Entry<Article> e : journal.changes.object2LongEntrySet() ) {
-				final long q = e.getLongValue();
-
-				if(q > 0) {
-					supplier.apply(e.getKey(), q, false);
-				}
-			}
-
-			for(final Entry<Article> e : journal.changes.object2LongEntrySet() ) {
-				final long q = e.getLongValue();
-
-				if(q < 0) {
-					consumer.apply(e.getKey(), -q, false);
-				}
-			}
+		undoJournal.exit(isCommitted);
+		notifier.exitTransaction(isCommitted);
+	}
 
-			if(journal.capacityDelta > 0) {
-				notifier.addToCapacity(-journal.capacityDelta);
-			}
+	protected void undo(int handle, Article article, long delta) {
+		if(article == null) {
+			notifier.addToCapacity(-delta);
+		} else if(delta > 0) {
+			supplier.apply(article, delta, false);
+		} else {
+			consumer.apply(article, -delta, false);
 		}
-
-		notifier.restoreJournal((DiscreteTrackingJournal) state);
 	}
 
 	public static final String TAG_ITEMS = "items";
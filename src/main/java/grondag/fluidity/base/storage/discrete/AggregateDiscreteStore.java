@@ -15,6 +15,7 @@
  ******************************************************************************/
 package grondag.fluidity.base.storage.discrete;
 
+import java.util.List;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
@@ -42,8 +43,8 @@ import grondag.fluidity.base.storage.discrete.helper.DiscreteTrackingNotifier;
 // NB: Previous versions attempted to consolidate member notifications
 // but this can lead to de-sync and other problems with creative bins
 // or other members that don't behave in a conventional manner.
-// A future version may consolidate notifications for downstream listeners
-// (for performance) but will have to do so based on actual member notifications.
+// Members can instead consolidate their own notifications with deferNotifications(true),
+// in which case this store only sees netted changes after member transactions commit.
 
 @Experimental
 public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDiscreteStoredArticle, AggregateDiscreteStore> implements DiscreteStore, DiscreteStorageListener {
@@ -82,8 +83,6 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 		return articles.get(Article.of(item, tag));
 	}
 
-	protected final ObjectArrayList<Store> searchList = new ObjectArrayList<>();
-
 	protected final Consumer consumer = new Consumer();
 
 	protected class Consumer implements DiscreteArticleFunction {
@@ -92,21 +91,59 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 			Preconditions.checkArgument(count >= 0, "Request to accept negative items. (%s)", count);
 			Preconditions.checkNotNull(item, "Request to accept null item");
 
-			if (item.isNothing() || stores.isEmpty()) {
+			if (item.isNothing()) {
 				return 0;
 			}
 
 			if(simulate) {
-				return acceptInner(item, count, true);
+				return stores.isEmpty() ? 0 : acceptInner(item, count, true);
 			} else {
 				try(Transaction tx = Transaction.open()) {
-					final long result = acceptInner(item, count, false);
+					// lock before reading membership or routing state
+					tx.enlistSelf(this);
+					final long result = stores.isEmpty() ? 0 : acceptInner(item, count, false);
 					tx.commit();
 					return result;
 				}
 			}
 		}
 
+		@Override
+		public long query(Article item, long count) {
+			Preconditions.checkArgument(count >= 0, "Request to accept negative items. (%s)", count);
+			Preconditions.checkNotNull(item, "Request to accept null item");
+
+			if (item.isNothing() || count == 0 || stores.isEmpty()) {
+				return 0;
+			}
+
+			// local list - queries must not touch shared state
+			final Set<Store> holders = holders(item);
+			final ObjectArrayList<Store> candidates = new ObjectArrayList<>();
+			addAcceptCandidates(holders, candidates);
+			long result = queryAccept(item, candidates, 0, count);
+
+			if (result < count) {
+				candidates.clear();
+				addOtherAcceptCandidates(holders, candidates);
+				result = queryAccept(item, candidates, result, count);
+			}
+
+			return result;
+		}
+
+		protected long queryAccept(Article item, List<Store> candidates, long result, long count) {
+			for (final Store store : candidates) {
+				result += store.getConsumer().query(item, count - result);
+
+				if (result == count) {
+					break;
+				}
+			}
+
+			return result;
+		}
+
 		@Override
 		public TransactionDelegate getTransactionDelegate() {
 			return AggregateDiscreteStore.this;
@@ -126,7 +163,7 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 			Preconditions.checkArgument(count >= 0, "Request to supply negative items. (%s)", count);
 			Preconditions.checkNotNull(item, "Request to supply null item");
 
-			if (item.isNothing() || isEmpty()) {
+			if (item.isNothing()) {
 				return 0;
 			}
 
@@ -134,6 +171,8 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 				return supplyInner(item, count, true);
 			} else {
 				try(Transaction tx = Transaction.open()) {
+					// lock before reading membership or stored counts
+					tx.enlistSelf(this);
 					final long result = supplyInner(item, count, false);
 					tx.commit();
 					return result;
@@ -141,6 +180,36 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 			}
 		}
 
+		@Override
+		public long query(Article item, long count) {
+			Preconditions.checkArgument(count >= 0, "Request to supply negative items. (%s)", count);
+			Preconditions.checkNotNull(item, "Request to supply null item");
+
+			if (item.isNothing() || count == 0 || isEmpty()) {
+				return 0;
+			}
+
+			final AggregateDiscreteStoredArticle article = articles.get(item);
+
+			if(article == null || article.isEmpty()) {
+				return 0;
+			}
+
+			long result = 0;
+
+			for (final Store store : article.stores()) {
+				if(store.hasSupplier()) {
+					result += store.getSupplier().query(item, count - result);
+
+					if (result == count) {
+						break;
+					}
+				}
+			}
+
+			return result;
+		}
+
 		@Override
 		public TransactionDelegate getTransactionDelegate() {
 			return AggregateDiscreteStore.this;
@@ -152,69 +221,41 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 		}
 	}
 
-	protected long acceptInner(Article item, long count, boolean simulate) {
-		long result = 0;
+	// Inner methods use local working state so that concurrent callers can't share it.
+	// Non-simulated callers must hold the lock on this store (see apply methods).
 
-		final AggregateDiscreteStoredArticle article = articles.findOrCreateArticle(item);
+	protected long acceptInner(Article item, long count, boolean simulate) {
+		// simulation must not add the article to the index
+		final Set<Store> existing = simulate ? holders(item) : articles.findOrCreateArticle(item).stores();
 
-		// Try stores that already have article first
-		final Set<Store> existing = article.stores();
+		// member notifications update the routing index as we go, so work from a copy
+		final ObjectArrayList<Store> searchList = new ObjectArrayList<>();
+		addAcceptCandidates(existing, searchList);
+		long result = acceptFromSearchList(item, existing, searchList, 0, count, simulate);
 
-		if(!existing.isEmpty()) {
-			// save non-existing stores here in case existing have insufficient capacity
+		if (result < count) {
 			searchList.clear();
+			addOtherAcceptCandidates(existing, searchList);
+			result = acceptFromSearchList(item, existing, searchList, result, count, simulate);
+		}
 
-			for (final Store store : stores) {
-				if(store.hasConsumer() && !store.isFull()) {
-
-					if(existing.contains(store)) {
-						result += store.getConsumer().apply(item, count - result, simulate);
-
-						if (result == count) {
-							break;
-						}
-					} else {
-						searchList.add(store);
-					}
-				}
-			}
-
-			if (result < count) {
-				for (final Store store : searchList) {
-					final long delta = store.getConsumer().apply(item, count - result, simulate);
+		return result;
+	}
 
-					if(delta != 0) {
-						result += delta;
+	protected long acceptFromSearchList(Article item, Set<Store> existing, List<Store> searchList, long result, long count, boolean simulate) {
+		for (final Store store : searchList) {
+			final long delta = store.getConsumer().apply(item, count - result, simulate);
 
-						// add new stores to per-article tracking
-						if(!simulate) {
-							existing.add(store);
-						}
+			if(delta != 0) {
+				result += delta;
 
-						if (result == count) {
-							break;
-						}
-					}
+				// add new stores to per-article tracking
+				if(!simulate) {
+					existing.add(store);
 				}
-			}
-
-		} else {
-			for (final Store store : stores) {
-				if(store.hasConsumer() && !store.isFull()) {
-					final long delta = store.getConsumer().apply(item, count - result, simulate);
-
-					if(delta != 0) {
-						result += delta;
 
-						// add new stores to per-article tracking
-						if(!simulate) {
-							existing.add(store);
-						}
-
-						if (result == count) {
-							break;
-						}
-					}
+				if (result == count) {
+					break;
 				}
 			}
 		}
@@ -240,7 +281,10 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 
 		final Set<Store> existing = article.stores();
 
-		for (final Store store : existing) {
+		// members are removed from the holders as they empty, so work from a copy
+		final ObjectArrayList<Store> searchList = new ObjectArrayList<>(existing);
+
+		for (final Store store : searchList) {
 			if(store.hasSupplier()) {
 				final long delta = store.getSupplier().apply(item, count - result, simulate);
 
@@ -299,9 +343,11 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 
 	@Override
 	public void onAccept(Store storage, int slot, Article item, long delta, long newCount) {
+		markChanged();
 		final AggregateDiscreteStoredArticle article = articles.findOrCreateArticle(item);
 		article.addToCount(delta);
 		article.stores().add(storage);
+		updateRouting(storage);
 		notifier.notifyAccept(article, delta);
 	}
 
@@ -310,6 +356,7 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 
 	@Override
 	public void onSupply(Store storage, int slot, Article item, long delta, long newCount) {
+		markChanged();
 		final AggregateDiscreteStoredArticle article = articles.get(item);
 
 		if(article == null) {
@@ -336,12 +383,16 @@ public class AggregateDiscreteStore extends AbstractAggregateStore<AggregateDisc
 			article.stores().remove(storage);
 		}
 
+		updateRouting(storage);
+
 		notifier.notifySupply(article, delta);
 		article.addToCount(-delta);
 	}
 
 	@Override
 	public void onCapacityChange(Store storage, long capacityDelta) {
+		markChanged();
+		updateRouting(storage);
 		notifier.addToCapacity(capacityDelta);
 	}
 
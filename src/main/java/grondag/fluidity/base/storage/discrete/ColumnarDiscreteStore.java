@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.storage.discrete;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.article.ArticleType;
+import grondag.fluidity.api.article.StoredArticleView;
+import grondag.fluidity.api.storage.ArticleFunction;
+import grondag.fluidity.api.storage.StorageListener;
+import grondag.fluidity.base.article.StoredDiscreteArticle;
+import grondag.fluidity.base.article.StoredDiscreteArticleView;
+import grondag.fluidity.base.storage.AbstractLazyRollbackStore;
+import grondag.fluidity.base.storage.discrete.helper.DiscreteTagWriter;
+import grondag.fluidity.base.storage.discrete.helper.DiscreteTrackingNotifier;
+import grondag.fluidity.base.transact.UndoJournal;
+
+/**
+ * Discrete store for very large numbers of distinct articles. Instead of a {@link StoredDiscreteArticle}
+ * instance per handle, articles and counts are kept in parallel arrays indexed by handle, and views are
+ * lightweight objects created on demand that read the arrays directly.<p>
+ *
+ * Handles of empty articles are reused through a free list, as in
+ * {@link grondag.fluidity.base.storage.helper.RecyclingArticleManager}. Saved data is
+ * interchangeable with {@link FlexibleDiscreteStore}.
+ */
+@Experimental
+public class ColumnarDiscreteStore extends AbstractLazyRollbackStore<StoredDiscreteArticle, ColumnarDiscreteStore> implements DiscreteStore {
+	protected final DiscreteTrackingNotifier notifier;
+	protected final UndoJournal undoJournal = new UndoJournal(this::undo);
+	protected final DiscreteTagWriter tagWriter = new DiscreteTagWriter(this);
+
+	// columns, indexed by handle - empty handles have a zero count and NOTHING as article
+	protected Article[] articles;
+	protected long[] counts;
+	protected int handleCount = 0;
+
+	// article id to handle
+	protected final Int2IntOpenHashMap index = new Int2IntOpenHashMap();
+	protected final IntArrayList freeHandles = new IntArrayList();
+
+	public ColumnarDiscreteStore(int startingHandleCount, long capacity) {
+		Preconditions.checkArgument(startingHandleCount > 0, "Starting handle count must be > 0. (%s)", startingHandleCount);
+		articles = new Article[startingHandleCount];
+		Arrays.fill(articles, Article.NOTHING);
+		counts = new long[startingHandleCount];
+		index.defaultReturnValue(-1);
+		notifier = new DiscreteTrackingNotifier(capacity, this);
+		notifier.setUndoJournal(undoJournal);
+		notifier.setTagWriter(tagWriter);
+	}
+
+	public ColumnarDiscreteStore(long capacity) {
+		this(32, capacity);
+	}
+
+	protected int claimHandle(Article item) {
+		final int handle;
+
+		if (freeHandles.isEmpty()) {
+			handle = handleCount++;
+
+			if (handle == counts.length) {
+				final int newCount = handle * 2;
+				articles = Arrays.copyOf(articles, newCount);
+				Arrays.fill(articles, handle, newCount, Article.NOTHING);
+				counts = Arrays.copyOf(counts, newCount);
+			}
+		} else {
+			handle = freeHandles.popInt();
+		}
+
+		articles[handle] = item;
+		index.put(item.id(), handle);
+		return handle;
+	}
+
+	/** Call after listeners have been notified that the handle is empty. */
+	protected void releaseHandle(int handle) {
+		index.remove(articles[handle].id());
+		articles[handle] = Article.NOTHING;
+		freeHandles.push(handle);
+	}
+
+	@Override
+	public ArticleFunction getConsumer() {
+		return consumer;
+	}
+
+	@Override
+	public boolean hasConsumer() {
+		return true;
+	}
+
+	@Override
+	public ArticleFunction getSupplier() {
+		return supplier;
+	}
+
+	@Override
+	public boolean hasSupplier() {
+		return true;
+	}
+
+	/**
+	 * Only handles changed since the last call are serialized again.
+	 * The item list may be shared with earlier results and must not be modified.
+	 */
+	@Override
+	public NbtCompound writeTag() {
+		final NbtCompound result = new NbtCompound();
+
+		if(!isEmpty()) {
+			result.put(AbstractDiscreteStore.TAG_ITEMS, tagWriter.write());
+		}
+
+		return result;
+	}
+
+	@Override
+	public void readTag(NbtCompound tag) {
+		clear();
+
+		if(tag.contains(AbstractDiscreteStore.TAG_ITEMS)) {
+			final NbtList list = tag.getList(AbstractDiscreteStore.TAG_ITEMS, 10);
+			final int limit = list.size();
+			final StoredDiscreteArticle lookup = new StoredDiscreteArticle();
+
+			for(int i = 0; i < limit; i++) {
+				lookup.readTag(list.getCompound(i));
+
+				if(!lookup.isEmpty()) {
+					consumer.apply(lookup.article(), lookup.count(), false);
+				}
+			}
+		}
+	}
+
+	@Override
+	public int handleCount() {
+		return handleCount;
+	}
+
+	@Override
+	public StoredArticleView view(int handle) {
+		return handle >= 0 && handle < handleCount ? new View(handle) : StoredArticleView.EMPTY;
+	}
+
+	/**
+	 * Iterates the columns with a single reused view, so the view must not be retained by the action.
+	 */
+	@Override
+	public void forEach(Predicate<? super StoredArticleView> filter, Predicate<? super StoredArticleView> action) {
+		final Cursor cursor = new Cursor();
+		final int limit = handleCount;
+
+		for (int i = 0; i < limit; i++) {
+			if (counts[i] != 0) {
+				cursor.handle = i;
+
+				if (filter.test(cursor) && !action.test(cursor)) {
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	public long countOf(Article item) {
+		final int handle = index.get(item.id());
+		return handle == -1 ? 0 : counts[handle];
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return notifier.count() == 0;
+	}
+
+	@Override
+	public boolean isFull() {
+		return notifier.count() >= notifier.capacity();
+	}
+
+	@Override
+	public long count() {
+		return notifier.count();
+	}
+
+	@Override
+	public long capacity() {
+		return notifier.capacity();
+	}
+
+	@Override
+	protected final void sendFirstListenerUpdate(StorageListener listener) {
+		notifier.sendFirstListenerUpdate(listener);
+	}
+
+	@Override
+	protected final void sendLastListenerUpdate(StorageListener listener) {
+		notifier.sendLastListenerUpdate(listener);
+	}
+
+	/** Handles are reclaimed as they empty, so there is nothing to compact. */
+	@Override
+	protected void onListenersEmpty() {
+		// NOOP
+	}
+
+	protected final Consumer consumer = new Consumer();
+
+	protected class Consumer implements DiscreteArticleFunction {
+		@Override
+		public long apply(Article item, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
+			final long result = query(item, count);
+
+			if(result > 0 && !simulate) {
+				rollbackHandler.prepareIfNeeded();
+				int handle = index.get(item.id());
+
+				if (handle == -1) {
+					handle = claimHandle(item);
+				}
+
+				final long newCount = counts[handle] + result;
+				counts[handle] = newCount;
+				notifier.notifyAccept(item, handle, result, newCount);
+				notifyDirty();
+			}
+
+			return result;
+		}
+
+		@Override
+		public long query(Article item, long count) {
+			Preconditions.checkArgument(count >= 0, "Request to accept negative items. (%s)", count);
+			Preconditions.checkNotNull(item, "Request to accept null item");
+
+			if (item.isNothing() || count == 0 || !filter.test(item)) {
+				return 0;
+			}
+
+			return Math.min(count, notifier.capacity() - notifier.count());
+		}
+
+		@Override
+		public TransactionDelegate getTransactionDelegate() {
+			return ColumnarDiscreteStore.this;
+		}
+
+		@Override
+		public Article suggestArticle(ArticleType<?> type) {
+			return type == null ? getAnyArticle().article() : getAnyMatch(type.viewPredicate()).article();
+		}
+	}
+
+	protected final Supplier supplier = new Supplier();
+
+	protected class Supplier implements DiscreteArticleFunction {
+		@Override
+		public long apply(Article item, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
+			final long result = query(item, count);
+
+			if(result > 0 && !simulate) {
+				rollbackHandler.prepareIfNeeded();
+				final int handle = index.get(item.id());
+				final long newCount = counts[handle] - result;
+				counts[handle] = newCount;
+				notifier.notifySupply(item, handle, result, newCount);
+
+				if (newCount == 0) {
+					releaseHandle(handle);
+				}
+
+				notifyDirty();
+			}
+
+			return result;
+		}
+
+		@Override
+		public long query(Article item, long count) {
+			Preconditions.checkArgument(count >= 0, "Request to supply negative items. (%s)", count);
+			Preconditions.checkNotNull(item, "Request to supply null item");
+
+			if (item.isNothing() || isEmpty()) {
+				return 0;
+			}
+
+			final int handle = index.get(item.id());
+			return handle == -1 ? 0 : Math.min(count, counts[handle]);
+		}
+
+		@Override
+		public TransactionDelegate getTransactionDelegate() {
+			return ColumnarDiscreteStore.this;
+		}
+
+		@Override
+		public Article suggestArticle(ArticleType<?> type) {
+			return type == null ? getAnyArticle().article() : getAnyMatch(type.viewPredicate()).article();
+		}
+	}
+
+	@Override
+	public void clear() {
+		if(isEmpty()) {
+			return;
+		}
+
+		rollbackHandler.prepareIfNeeded();
+
+		final int limit = handleCount;
+
+		for (int i = 0; i < limit; i++) {
+			final long count = counts[i];
+
+			if(count != 0) {
+				notifier.notifySupply(articles[i], i, count, 0);
+			}
+		}
+
+		Arrays.fill(articles, 0, limit, Article.NOTHING);
+		Arrays.fill(counts, 0, limit, 0);
+		index.clear();
+		freeHandles.clear();
+		handleCount = 0;
+		tagWriter.markAllDirty();
+		notifyDirty();
+	}
+
+	@Override
+	protected Object createRollbackState() {
+		notifier.enterTransaction();
+		return undoJournal.prepare();
+	}
+
+	@Override
+	protected void applyRollbackState(Object state, boolean isCommitted) {
+		undoJournal.exit(isCommitted);
+		notifier.exitTransaction(isCommitted);
+	}
+
+	protected void undo(int handle, Article article, long delta) {
+		if(article == null) {
+			notifier.addToCapacity(-delta);
+		} else if(delta > 0) {
+			supplier.apply(article, delta, false);
+		} else {
+			consumer.apply(article, -delta, false);
+		}
+	}
+
+	/** View of a single handle that reads the columns directly. */
+	protected class View implements StoredDiscreteArticleView {
+		protected int handle;
+
+		protected View(int handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public Article article() {
+			return articles[handle];
+		}
+
+		@Override
+		public int handle() {
+			return handle;
+		}
+
+		@Override
+		public long count() {
+			return counts[handle];
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return counts[handle] == 0;
+		}
+	}
+
+	/** View moved from handle to handle during iteration. */
+	protected class Cursor extends View {
+		protected Cursor() {
+			super(0);
+		}
+	}
+}
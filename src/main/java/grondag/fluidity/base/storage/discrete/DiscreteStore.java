@@ -51,5 +51,16 @@ public interface DiscreteStore extends Store {
 			final long whole = numerator / divisor;
 			return whole == 0 ? 0 : apply(item, whole, simulate) * divisor;
 		}
+
+		@Override
+		default Fraction query(Article item, Fraction volume) {
+			return volume.whole() == 0 ? Fraction.ZERO : Fraction.of(query(item, volume.whole()));
+		}
+
+		@Override
+		default long query(Article item, long numerator, long divisor) {
+			final long whole = numerator / divisor;
+			return whole == 0 ? 0 : query(item, whole) * divisor;
+		}
 	}
 }
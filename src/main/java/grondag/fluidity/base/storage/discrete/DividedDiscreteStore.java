@@ -61,7 +61,7 @@ public class DividedDiscreteStore extends AbstractDiscreteStore<DividedDiscreteS
 
 	protected class Consumer extends AbstractDiscreteStore<DividedDiscreteStore>.Consumer {
 		@Override
-		public long apply(Article item, long count, boolean simulate) {
+		public long query(Article item, long count) {
 			if(notifier.articleCount() >= divisionCount) {
 				final StoredDiscreteArticle a = articles.get(item);
 
@@ -72,11 +72,15 @@ public class DividedDiscreteStore extends AbstractDiscreteStore<DividedDiscreteS
 				count = limit(a, count);
 			}
 
-			return super.apply(item, count, simulate);
+			return super.query(item, count);
 		}
 
 		@Override
 		public long apply(int handle, Article item, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
 			Preconditions.checkArgument(count >= 0, "Request to accept negative items. (%s)", count);
 			Preconditions.checkNotNull(item, "Request to accept null item");
 
@@ -100,7 +104,7 @@ public class DividedDiscreteStore extends AbstractDiscreteStore<DividedDiscreteS
 					}
 
 					notifier.notifyAccept(a, result);
-					dirtyNotifier.run();
+					notifyDirty();
 				}
 
 				return result;
@@ -118,6 +122,10 @@ public class DividedDiscreteStore extends AbstractDiscreteStore<DividedDiscreteS
 	protected class Supplier extends AbstractDiscreteStore<DividedDiscreteStore>.Supplier {
 		@Override
 		public long apply(int handle, Article item, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
 			Preconditions.checkArgument(count >= 0, "Request to supply negative items. (%s)", count);
 			Preconditions.checkNotNull(item, "Request to supply null item");
 
@@ -137,7 +145,7 @@ public class DividedDiscreteStore extends AbstractDiscreteStore<DividedDiscreteS
 				rollbackHandler.prepareIfNeeded();
 				notifier.notifySupply(a, result);
 				a.addToCount(-result);
-				dirtyNotifier.run();
+				notifyDirty();
 			}
 
 			return result;
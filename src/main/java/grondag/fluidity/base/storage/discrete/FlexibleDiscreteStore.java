@@ -18,12 +18,12 @@ package grondag.fluidity.base.storage.discrete;
 import org.jetbrains.annotations.ApiStatus.Experimental;
 
 import grondag.fluidity.base.article.StoredDiscreteArticle;
-import grondag.fluidity.base.storage.helper.FlexibleArticleManager;
+import grondag.fluidity.base.storage.helper.RecyclingArticleManager;
 
 @Experimental
 public class FlexibleDiscreteStore extends AbstractDiscreteStore<FlexibleDiscreteStore> {
 	public FlexibleDiscreteStore(int startingHandleCount, long capacity) {
-		super(startingHandleCount, capacity, new FlexibleArticleManager<>(startingHandleCount, StoredDiscreteArticle::new));
+		super(startingHandleCount, capacity, new RecyclingArticleManager<>(startingHandleCount, StoredDiscreteArticle::new));
 	}
 
 	public FlexibleDiscreteStore(long capacity) {
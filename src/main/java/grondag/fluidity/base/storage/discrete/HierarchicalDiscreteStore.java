@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.storage.discrete;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.storage.Store;
+import grondag.fluidity.base.article.AggregateDiscreteStoredArticle;
+
+/**
+ * Aggregate for very large numbers of members, arranged as a tree of nested aggregates.
+ * Every node caches per-article totals and free capacity from the notifications of its children,
+ * so requests skip full subtrees and subtrees without the article with a single check at each level,
+ * and routing visits O(log members) nodes instead of every member.<p>
+ *
+ * Leaves hold up to {@code fanOut} members. When a leaf fills up it becomes an inner node and its
+ * members move to a new child leaf. Inner nodes hold up to {@code fanOut} children and add new members
+ * to the child with the fewest members. Members that move during this growth are removed and re-added,
+ * so listeners see supply and then accept notifications for their content.<p>
+ *
+ * At inner nodes the empty set of the routing index holds children that can accept a new article,
+ * whether or not they are empty.
+ */
+@Experimental
+public class HierarchicalDiscreteStore extends AggregateDiscreteStore {
+	public static final int DEFAULT_FAN_OUT = 16;
+
+	protected final int fanOut;
+	protected boolean isLeaf = true;
+	// for inner nodes, the child containing each member below this node
+	protected final Object2ObjectOpenHashMap<Store, HierarchicalDiscreteStore> childOf = new Object2ObjectOpenHashMap<>();
+
+	public HierarchicalDiscreteStore(int fanOut, int startingSlotCount) {
+		super(startingSlotCount);
+		Preconditions.checkArgument(fanOut >= 2, "Fan out must be >= 2. (%s)", fanOut);
+		this.fanOut = fanOut;
+	}
+
+	public HierarchicalDiscreteStore(int fanOut) {
+		this(fanOut, 32);
+	}
+
+	public HierarchicalDiscreteStore() {
+		this(DEFAULT_FAN_OUT);
+	}
+
+	protected HierarchicalDiscreteStore newNode() {
+		final HierarchicalDiscreteStore result = new HierarchicalDiscreteStore(fanOut);
+		result.exclusiveMembers(exclusiveMembers);
+		return result;
+	}
+
+	/**
+	 * @return number of members below this node, not counting intermediate nodes
+	 */
+	public int memberCount() {
+		return isLeaf ? stores.size() : childOf.size();
+	}
+
+	@Override
+	public void addStore(Store store) {
+		if (isLeaf) {
+			if (stores.contains(store)) {
+				return;
+			}
+
+			if (stores.size() < fanOut) {
+				super.addStore(store);
+				return;
+			}
+
+			split();
+		}
+
+		if (!childOf.containsKey(store)) {
+			final HierarchicalDiscreteStore child = childFor();
+			child.addStore(store);
+			childOf.put(store, child);
+			updateRouting(child);
+		}
+	}
+
+	protected HierarchicalDiscreteStore childFor() {
+		HierarchicalDiscreteStore result = null;
+
+		for (final Store store : stores) {
+			final HierarchicalDiscreteStore child = (HierarchicalDiscreteStore) store;
+
+			if (result == null || child.memberCount() < result.memberCount()) {
+				result = child;
+			}
+		}
+
+		// prefer a new sibling over splitting a full child
+		if (result == null || (stores.size() < fanOut && result.memberCount() >= fanOut)) {
+			result = newNode();
+			super.addStore(result);
+		}
+
+		return result;
+	}
+
+	/** Turns this leaf into an inner node with a single child holding the former members. */
+	protected void split() {
+		final Store[] members = stores.toArray(new Store[stores.size()]);
+
+		for (final Store member : members) {
+			super.removeStore(member);
+		}
+
+		isLeaf = false;
+		final HierarchicalDiscreteStore child = newNode();
+
+		for (final Store member : members) {
+			child.addStore(member);
+			childOf.put(member, child);
+		}
+
+		super.addStore(child);
+	}
+
+	@Override
+	public void removeStore(Store store) {
+		if (isLeaf) {
+			super.removeStore(store);
+			return;
+		}
+
+		final HierarchicalDiscreteStore child = childOf.remove(store);
+
+		if (child != null) {
+			child.removeStore(store);
+
+			if (child.memberCount() == 0) {
+				super.removeStore(child);
+			} else {
+				// removal may change what the child can accept without a notification
+				updateRouting(child);
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		if (isLeaf) {
+			super.clear();
+			return;
+		}
+
+		for (final Store store : stores.toArray(new Store[stores.size()])) {
+			((HierarchicalDiscreteStore) store).clear();
+			super.removeStore(store);
+		}
+
+		childOf.clear();
+		isLeaf = true;
+	}
+
+	@Override
+	public AggregateDiscreteStore exclusiveMembers(boolean exclusiveMembers) {
+		super.exclusiveMembers(exclusiveMembers);
+
+		if (!isLeaf) {
+			for (final Store store : stores) {
+				((HierarchicalDiscreteStore) store).exclusiveMembers(exclusiveMembers);
+				// changes what the child can accept without a notification
+				updateRouting(store);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * @return true if some member below this node may accept an article it doesn't already hold
+	 */
+	protected boolean canAcceptNewArticle() {
+		return !emptyStores.isEmpty() || (!exclusiveMembers && !openStores.isEmpty());
+	}
+
+	@Override
+	protected void updateRouting(Store store) {
+		if (isLeaf) {
+			super.updateRouting(store);
+			return;
+		}
+
+		if (!stores.contains(store)) {
+			return;
+		}
+
+		final HierarchicalDiscreteStore child = (HierarchicalDiscreteStore) store;
+
+		if (child.isFull()) {
+			openStores.remove(child);
+			emptyStores.remove(child);
+		} else {
+			openStores.add(child);
+
+			if (child.canAcceptNewArticle()) {
+				emptyStores.add(child);
+			} else {
+				emptyStores.remove(child);
+			}
+		}
+	}
+
+	/**
+	 * Reports the cached total from member notifications instead of querying members.
+	 */
+	@Override
+	public long countOf(Article item) {
+		final AggregateDiscreteStoredArticle article = articles.get(item);
+		return article == null ? 0 : article.count();
+	}
+}
@@ -72,6 +72,9 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 	protected class Consumer implements FixedDiscreteArticleFunction {
 		@Override
 		public long apply(Article article, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
 
 			if(article.isNothing()) {
 				return 0;
@@ -84,7 +87,7 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 					rollbackHandler.prepareIfNeeded();
 					storedArticle = article;
 					quantity = n;
-					dirtyNotifier.run();
+					notifyDirty();
 
 					if(!listeners.isEmpty()) {
 						notifier.notifyAccept(article, 0, n, n);
@@ -98,7 +101,7 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 				if(!simulate) {
 					rollbackHandler.prepareIfNeeded();
 					quantity += n;
-					dirtyNotifier.run();
+					notifyDirty();
 
 					if(!listeners.isEmpty()) {
 						notifier.notifyAccept(article, 0, n, quantity);
@@ -140,6 +143,10 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 	protected class Supplier implements FixedDiscreteArticleFunction {
 		@Override
 		public long apply(Article article, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
 			if(article.isNothing() || quantity == 0 || !article.equals(storedArticle)) {
 				return 0;
 			}
@@ -149,7 +156,7 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 			if(!simulate) {
 				rollbackHandler.prepareIfNeeded();
 				quantity -= n;
-				dirtyNotifier.run();
+				notifyDirty();
 
 				if(!listeners.isEmpty()) {
 					notifier.notifySupply(article, 0, n, quantity);
@@ -216,6 +223,7 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 
 	@Override
 	protected Object createRollbackState() {
+		notifier.enterTransaction();
 		return Triple.of(storedArticle, quantity, capacity);
 	}
 
@@ -228,6 +236,8 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 			quantity = triple.getMiddle();
 			capacity = triple.getRight();
 		}
+
+		notifier.exitTransaction(isCommitted);
 	}
 
 	@Override
@@ -270,6 +280,7 @@ public class SingleArticleStore extends AbstractLazyRollbackStore<StoredDiscrete
 		capacity = tag.getLong("capacity");
 		quantity = tag.getLong("quantity");
 		storedArticle = Article.fromTag(tag.get("art"));
+		markChanged();
 	}
 
 	@Override
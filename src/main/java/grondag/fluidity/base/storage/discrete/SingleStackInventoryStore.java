@@ -27,10 +27,12 @@ import grondag.fluidity.api.article.StoredArticleView;
 import grondag.fluidity.api.storage.ArticleFunction;
 import grondag.fluidity.api.storage.InventoryStore;
 import grondag.fluidity.api.storage.StorageListener;
+import grondag.fluidity.api.storage.StoreSnapshot;
 import grondag.fluidity.base.article.StoredDiscreteArticle;
 import grondag.fluidity.base.storage.AbstractLazyRollbackStore;
 import grondag.fluidity.base.storage.discrete.FixedDiscreteStore.FixedDiscreteArticleFunction;
 import grondag.fluidity.base.storage.discrete.helper.DiscreteNotifier;
+import grondag.fluidity.base.transact.InventoryUndoLog;
 import grondag.fluidity.impl.article.ArticleImpl;
 import grondag.fluidity.impl.article.StackHelper;
 
@@ -40,6 +42,7 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 	protected ItemStack cleanStack = ItemStack.EMPTY;
 	protected final StoredDiscreteArticle view = new StoredDiscreteArticle();
 	protected final DiscreteNotifier notifier = new DiscreteNotifier(this);
+	protected final InventoryUndoLog undoLog = new InventoryUndoLog(1, this::setStack);
 
 	@Override
 	public ArticleFunction getConsumer() {
@@ -70,6 +73,10 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 	protected class Consumer implements FixedDiscreteArticleFunction {
 		@Override
 		public long apply(Article article, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
 
 			if(article.isNothing()) {
 				return 0;
@@ -82,6 +89,7 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 
 				if(!simulate) {
 					rollbackHandler.prepareIfNeeded();
+					undoLog.record(0, stack);
 					stack = article.toStack(n);
 					cleanStack = stack.copy();
 
@@ -100,6 +108,7 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 
 				if(!simulate) {
 					rollbackHandler.prepareIfNeeded();
+					undoLog.record(0, stack);
 					stack.increment(n);
 					cleanStack = stack.copy();
 
@@ -140,6 +149,10 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 	protected class Supplier implements FixedDiscreteArticleFunction {
 		@Override
 		public long apply(Article article, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
 			if(article.isNothing() || stack.isEmpty() || !article.matches(stack)) {
 				return 0;
 			}
@@ -150,6 +163,7 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 				final int oldMax = stack.getMaxCount();
 
 				rollbackHandler.prepareIfNeeded();
+				undoLog.record(0, stack);
 				stack.decrement(n);
 				cleanStack = stack.copy();
 
@@ -192,6 +206,16 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 		return view.prepare(handle == 0 ? stack : ItemStack.EMPTY, handle);
 	}
 
+	/**
+	 * The stack can be changed through the {@code Inventory} interface without any notification,
+	 * so a cached snapshot is never reused.
+	 */
+	@Override
+	public StoreSnapshot snapshot() {
+		markChanged();
+		return super.snapshot();
+	}
+
 	@Override
 	public int size() {
 		return 1;
@@ -219,6 +243,7 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 		}
 
 		rollbackHandler.prepareIfNeeded();
+		undoLog.record(0, stack);
 		final int n = Math.min(count, stack.getCount());
 
 		if(!listeners.isEmpty()) {
@@ -240,6 +265,7 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 		}
 
 		rollbackHandler.prepareIfNeeded();
+		undoLog.record(0, stack);
 
 		if(!listeners.isEmpty()) {
 			notifier.notifySupply(ArticleImpl.of(stack), 0, stack.getCount(), 0);
@@ -256,18 +282,24 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 	public void setStack(int slot, ItemStack newStack) {
 		Preconditions.checkElementIndex(slot, 1, "Invalid slot number");
 
-		if (StackHelper.areItemsEqual(newStack, stack)) {
-			if(newStack.getCount() == stack.getCount()) {
-				return;
-			} else {
-				final int delta = newStack.getCount() - stack.getCount();
+		final boolean isSameItem = StackHelper.areItemsEqual(newStack, stack);
 
-				if(!listeners.isEmpty()) {
-					if(delta > 0) {
-						notifier.notifyAccept(ArticleImpl.of(stack), 0, delta, newStack.getCount());
-					} else {
-						notifier.notifySupply(ArticleImpl.of(stack), 0, -delta, newStack.getCount());
-					}
+		// no-op updates don't enlist the store or grow the undo log
+		if (isSameItem && newStack.getCount() == stack.getCount()) {
+			return;
+		}
+
+		rollbackHandler.prepareIfNeeded();
+		undoLog.record(0, stack);
+
+		if (isSameItem) {
+			final int delta = newStack.getCount() - stack.getCount();
+
+			if(!listeners.isEmpty()) {
+				if(delta > 0) {
+					notifier.notifyAccept(ArticleImpl.of(stack), 0, delta, newStack.getCount());
+				} else {
+					notifier.notifySupply(ArticleImpl.of(stack), 0, -delta, newStack.getCount());
 				}
 			}
 		} else {
@@ -277,7 +309,6 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 			}
 		}
 
-		rollbackHandler.prepareIfNeeded();
 		stack = newStack;
 		cleanStack = stack.copy();
 	}
@@ -286,6 +317,7 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 	public void clear() {
 		if (!stack.isEmpty()) {
 			rollbackHandler.prepareIfNeeded();
+			undoLog.record(0, stack);
 
 			if(!listeners.isEmpty()) {
 				notifier.notifySupply(ArticleImpl.of(stack), 0, stack.getCount(), 0);
@@ -298,15 +330,15 @@ public class SingleStackInventoryStore extends AbstractLazyRollbackStore<StoredD
 
 	@Override
 	protected Object createRollbackState() {
-		return stack.copy();
+		notifier.enterTransaction();
+		undoLog.enter();
+		return undoLog;
 	}
 
 	@Override
 	protected void applyRollbackState(Object state, boolean isCommitted) {
-		if(!isCommitted) {
-			stack = (ItemStack) state;
-			cleanStack = stack.copy();
-		}
+		undoLog.exit(isCommitted);
+		notifier.exitTransaction(isCommitted);
 	}
 
 	@Override
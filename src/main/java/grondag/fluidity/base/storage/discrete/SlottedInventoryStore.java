@@ -27,31 +27,31 @@ import grondag.fluidity.api.article.Article;
 import grondag.fluidity.api.storage.InventoryStore;
 import grondag.fluidity.base.article.StoredDiscreteArticle;
 import grondag.fluidity.base.storage.discrete.FixedDiscreteStore.FixedDiscreteArticleFunction;
-import grondag.fluidity.base.storage.helper.FlexibleArticleManager;
-import grondag.fluidity.base.transact.TransactionHelper;
+import grondag.fluidity.base.storage.helper.RecyclingArticleManager;
+import grondag.fluidity.base.transact.InventoryUndoLog;
 import grondag.fluidity.impl.article.ArticleImpl;
 import grondag.fluidity.impl.article.StackHelper;
 
 /**
- *
- * The naive, copy-all-the-stacks approach used here for transaction support is
- * heavy on allocation and could be problematic for very large inventories or very
- * large transaction. A journaling approach that captures changes as they are made
- * is likely to be preferable for performant implementations.
+ * Transaction support copies only the slots that change, via {@link InventoryUndoLog}.
+ * Changes made directly to stacks obtained from {@link #getStack(int)} are detected
+ * by {@link #markDirty()} but are not reversed if a transaction is rolled back.
  */
 @Experimental
 public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventoryStore> implements InventoryStore {
 	protected final int slotCount;
 	protected final ItemStack[] stacks;
 	protected final ItemStack[] cleanStacks;
+	protected final InventoryUndoLog undoLog;
 
 	public SlottedInventoryStore(int slotCount) {
-		super(slotCount, slotCount * 64, new FlexibleArticleManager<>(slotCount, StoredDiscreteArticle::new));
+		super(slotCount, slotCount * 64, new RecyclingArticleManager<>(slotCount, StoredDiscreteArticle::new));
 		this.slotCount = slotCount;
 		stacks = new ItemStack[slotCount];
 		cleanStacks = new ItemStack[slotCount];
 		Arrays.fill(stacks, ItemStack.EMPTY);
 		Arrays.fill(cleanStacks, ItemStack.EMPTY);
+		undoLog = new InventoryUndoLog(slotCount, this::setStack);
 	}
 
 	protected void synchCleanStack(int slot) {
@@ -77,22 +77,26 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 		Preconditions.checkElementIndex(slot, slotCount, "Invalid slot");
 
 		final ItemStack currentStack = stacks[slot];
+		final boolean isSameItem = ItemStack.areItemsEqual(newStack, currentStack);
+
+		// no-op updates don't enlist the store or grow the undo log
+		if (isSameItem && newStack.getCount() == currentStack.getCount()) {
+			return;
+		}
+
 		final boolean needAcceptNotify;
 
 		rollbackHandler.prepareIfNeeded();
+		undoLog.record(slot, currentStack);
 
-		if (ItemStack.areItemsEqual(newStack, currentStack)) {
-			if(newStack.getCount() == currentStack.getCount()) {
-				return;
-			} else {
-				final int delta = newStack.getCount() - currentStack.getCount();
-				needAcceptNotify = false;
+		if (isSameItem) {
+			final int delta = newStack.getCount() - currentStack.getCount();
+			needAcceptNotify = false;
 
-				if(delta > 0) {
-					notifyAccept(newStack, delta);
-				} else {
-					notifySupply(newStack, -delta);
-				}
+			if(delta > 0) {
+				notifyAccept(newStack, delta);
+			} else {
+				notifySupply(newStack, -delta);
 			}
 		} else {
 			notifySupply(currentStack, currentStack.getCount());
@@ -101,7 +105,7 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 
 		stacks[slot] = newStack;
 		synchCleanStack(slot);
-		dirtyNotifier.run();
+		notifyDirty();
 
 		if(needAcceptNotify) {
 			notifyAccept(newStack, newStack.getCount());
@@ -119,13 +123,14 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 		}
 
 		rollbackHandler.prepareIfNeeded();
+		undoLog.record(slot, stack);
 		final int n = Math.min(count, stack.getCount());
 		notifySupply(stack, n);
 		final ItemStack result = stack.copy();
 		result.setCount(n);
 		stack.decrement(n);
 		synchCleanStack(slot);
-		dirtyNotifier.run();
+		notifyDirty();
 
 		return result;
 	}
@@ -141,10 +146,11 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 		}
 
 		rollbackHandler.prepareIfNeeded();
+		undoLog.record(slot, stack);
 		notifySupply(stack, stack.getCount());
 		stacks[slot] = ItemStack.EMPTY;
 		cleanStacks[slot] = ItemStack.EMPTY;
-		dirtyNotifier.run();
+		notifyDirty();
 
 		return stack;
 	}
@@ -158,6 +164,7 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 				final ItemStack stack = stacks[i];
 
 				if (!stack.isEmpty()) {
+					undoLog.record(i, stack);
 					notifySupply(stack, stack.getCount());
 					stacks[i] = ItemStack.EMPTY;
 					cleanStacks[i] = ItemStack.EMPTY;
@@ -166,20 +173,21 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 
 			articles.clear();
 			notifier.setCapacity(slotCount * 64);
-			dirtyNotifier.run();
+			notifyDirty();
 		}
 	}
 
 	@Override
 	protected Object createRollbackState() {
-		return TransactionHelper.prepareInventoryRollbackState(SlottedInventoryStore.this);
+		notifier.enterTransaction();
+		undoLog.enter();
+		return undoLog;
 	}
 
 	@Override
 	protected void applyRollbackState(Object state, boolean isCommitted) {
-		if(!isCommitted) {
-			TransactionHelper.applyInventoryRollbackState(state, this);
-		}
+		undoLog.exit(isCommitted);
+		notifier.exitTransaction(isCommitted);
 	}
 
 	@Override
@@ -190,6 +198,10 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 	protected class Consumer extends AbstractDiscreteStore<DividedDiscreteStore>.Consumer {
 		@Override
 		public long apply(Article article, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
 			Preconditions.checkArgument(count >= 0, "Request to accept negative items. (%s)", count);
 
 			if(article.isNothing() || count == 0 || !filter.test(article)) {
@@ -211,11 +223,12 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 							needsRollback = false;
 						}
 
+						undoLog.record(slot, stack);
 						final ItemStack newStack = article.toStack(n);
 						notifyAccept(newStack, n);
 						stacks[slot] = newStack;
 						synchCleanStack(slot);
-						dirtyNotifier.run();
+						notifyDirty();
 					}
 
 					result += n;
@@ -228,10 +241,11 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 							needsRollback = false;
 						}
 
+						undoLog.record(slot, stack);
 						stack.increment(n);
 						synchCleanStack(slot);
 						notifyAccept(stack, n);
-						dirtyNotifier.run();
+						notifyDirty();
 					}
 
 					result += n;
@@ -244,6 +258,12 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 
 			return result;
 		}
+
+		@Override
+		public long query(Article article, long count) {
+			// simulation doesn't touch rollback state or stacks
+			return apply(article, count, true);
+		}
 	}
 
 	@Override
@@ -254,6 +274,10 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 	protected class Supplier extends AbstractDiscreteStore<DividedDiscreteStore>.Supplier {
 		@Override
 		public long apply(Article article, long count, boolean simulate) {
+			if (!simulate) {
+				rollbackHandler.enlist();
+			}
+
 			if(article.isNothing() || count == 0) {
 				return 0;
 			}
@@ -273,6 +297,7 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 							needsRollback = false;
 						}
 
+						undoLog.record(slot, stack);
 						notifySupply(stack, n);
 						stack.decrement(n);
 
@@ -281,7 +306,7 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 						}
 
 						synchCleanStack(slot);
-						dirtyNotifier.run();
+						notifyDirty();
 					}
 
 					result += n;
@@ -294,6 +319,12 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 
 			return result;
 		}
+
+		@Override
+		public long query(Article article, long count) {
+			// simulation doesn't touch rollback state or stacks
+			return apply(article, count, true);
+		}
 	}
 
 	protected void notifySupply(ItemStack stack, int count) {
@@ -306,6 +337,10 @@ public class SlottedInventoryStore extends AbstractDiscreteStore<SlottedInventor
 		final StoredDiscreteArticle article = articles.findOrCreateArticle(ArticleImpl.of(stack));
 		notifier.notifySupply(article, count);
 		article.addToCount(-count);
+
+		if(article.isEmpty()) {
+			articles.release(article);
+		}
 	}
 
 	protected void notifyAccept(ItemStack stack, int count) {
@@ -15,6 +15,10 @@
  ******************************************************************************/
 package grondag.fluidity.base.storage.discrete.helper;
 
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.jetbrains.annotations.ApiStatus.Experimental;
 
 import grondag.fluidity.api.article.Article;
@@ -22,24 +26,59 @@ import grondag.fluidity.api.storage.StorageListener;
 import grondag.fluidity.base.article.StoredDiscreteArticle;
 import grondag.fluidity.base.storage.AbstractStore;
 
+/**
+ * Sends storage events to listeners of the owning store.<p>
+ *
+ * When the owner has {@link AbstractStore#deferNotifications(boolean)} enabled, events that happen while the
+ * owner is enlisted in a transaction are logged instead of sent. Events logged in a rolled-back transaction are
+ * discarded. When the outermost transaction in which the owner is enlisted commits, the remaining events are
+ * netted per article and handle and sent once.<p>
+ *
+ * Stores that support deferral must call {@link #enterTransaction()} when they prepare rollback state and
+ * {@link #exitTransaction(boolean)} after they have applied it.
+ */
 @Experimental
 public class DiscreteNotifier {
 	protected final AbstractStore<? extends StoredDiscreteArticle, ?> owner;
 
+	// log position and capacity delta at start of each transaction level in which owner is enlisted
+	protected final IntArrayList marks = new IntArrayList();
+	protected final LongArrayList capacityMarks = new LongArrayList();
+
+	protected final ObjectArrayList<Article> deferredArticles = new ObjectArrayList<>();
+	protected final IntArrayList deferredHandles = new IntArrayList();
+	protected final LongArrayList deferredDeltas = new LongArrayList();
+	protected final LongArrayList deferredCounts = new LongArrayList();
+	protected long deferredCapacityDelta = 0;
+	// handle to position of its latest netted entry
+	protected Int2IntOpenHashMap netIndex = null;
+
 	public DiscreteNotifier(AbstractStore<? extends StoredDiscreteArticle, ?> owner) {
 		this.owner = owner;
 	}
 
+	protected boolean isDeferring() {
+		return !marks.isEmpty() && owner.isDeferringNotifications();
+	}
+
 	public void notifySupply(Article item, int handle, long delta, long newCount) {
 		assert newCount >= 0;
 
 		if(!owner.listeners.isEmpty()) {
-			for(final StorageListener l : owner.listeners) {
-				l.onSupply(owner, handle, item, delta, newCount);
+			if (isDeferring()) {
+				defer(item, handle, -delta, newCount);
+			} else {
+				sendSupply(item, handle, delta, newCount);
 			}
 		}
 	}
 
+	protected void sendSupply(Article item, int handle, long delta, long newCount) {
+		for(final StorageListener l : owner.listeners) {
+			l.onSupply(owner, handle, item, delta, newCount);
+		}
+	}
+
 	public void notifySupply(StoredDiscreteArticle article, long delta) {
 		notifySupply(article.article(), article.handle(), delta, article.count() - delta);
 	}
@@ -48,24 +87,149 @@ public class DiscreteNotifier {
 		assert newCount >= 0;
 
 		if(!owner.listeners.isEmpty()) {
-			for(final StorageListener l : owner.listeners) {
-				l.onAccept(owner, handle, item, delta, newCount);
+			if (isDeferring()) {
+				defer(item, handle, delta, newCount);
+			} else {
+				sendAccept(item, handle, delta, newCount);
 			}
 		}
 	}
 
+	protected void sendAccept(Article item, int handle, long delta, long newCount) {
+		for(final StorageListener l : owner.listeners) {
+			l.onAccept(owner, handle, item, delta, newCount);
+		}
+	}
+
 	public void notifyAccept(StoredDiscreteArticle article, long delta) {
 		notifyAccept(article.article(), article.handle(), delta, article.count());
 	}
 
 	public void notifyCapacityChange(long capacityDelta) {
 		if(!owner.listeners.isEmpty()) {
-			for(final StorageListener l : owner.listeners) {
-				l.onCapacityChange(owner, capacityDelta);
+			if (isDeferring()) {
+				deferredCapacityDelta += capacityDelta;
+			} else {
+				sendCapacityChange(capacityDelta);
 			}
 		}
 	}
 
+	protected void sendCapacityChange(long capacityDelta) {
+		for(final StorageListener l : owner.listeners) {
+			l.onCapacityChange(owner, capacityDelta);
+		}
+	}
+
+	protected void defer(Article item, int handle, long signedDelta, long newCount) {
+		deferredArticles.add(item);
+		deferredHandles.add(handle);
+		deferredDeltas.add(signedDelta);
+		deferredCounts.add(newCount);
+	}
+
+	/**
+	 * Call when the owner prepares rollback state for a transaction.
+	 */
+	public void enterTransaction() {
+		marks.push(deferredArticles.size());
+		capacityMarks.push(deferredCapacityDelta);
+	}
+
+	/**
+	 * Call after the owner has applied rollback state for a transaction, including
+	 * any notifications sent while restoring state on rollback.
+	 *
+	 * @param isCommitted true if the transaction was committed
+	 */
+	public void exitTransaction(boolean isCommitted) {
+		final int mark = marks.popInt();
+		final long capacityMark = capacityMarks.popLong();
+
+		if (!isCommitted) {
+			truncateDeferred(mark);
+			deferredCapacityDelta = capacityMark;
+		}
+
+		if (marks.isEmpty()) {
+			sendDeferred();
+		}
+	}
+
+	protected void truncateDeferred(int size) {
+		deferredArticles.size(size);
+		deferredHandles.size(size);
+		deferredDeltas.size(size);
+		deferredCounts.size(size);
+	}
+
+	/**
+	 * Nets logged events per article and handle in place and sends them. An article
+	 * that moved to a different handle is sent as separate events for each handle, and
+	 * a handle reused by a different article starts a new event, so event order is kept
+	 * within each handle.
+	 */
+	protected void sendDeferred() {
+		final long capacityDelta = deferredCapacityDelta;
+		deferredCapacityDelta = 0;
+
+		if (capacityDelta > 0) {
+			sendCapacityChange(capacityDelta);
+		}
+
+		final int limit = deferredArticles.size();
+
+		if (limit > 0) {
+			Int2IntOpenHashMap netIndex = this.netIndex;
+
+			if (netIndex == null) {
+				netIndex = new Int2IntOpenHashMap();
+				netIndex.defaultReturnValue(-1);
+				this.netIndex = netIndex;
+			}
+
+			int netCount = 0;
+
+			for (int i = 0; i < limit; ++i) {
+				final Article item = deferredArticles.get(i);
+				final int handle = deferredHandles.getInt(i);
+				final int j = netIndex.get(handle);
+
+				if (j != -1 && deferredArticles.get(j) == item) {
+					deferredDeltas.set(j, deferredDeltas.getLong(j) + deferredDeltas.getLong(i));
+					deferredCounts.set(j, deferredCounts.getLong(i));
+				} else {
+					netIndex.put(handle, netCount);
+					deferredArticles.set(netCount, item);
+					deferredHandles.set(netCount, handle);
+					deferredDeltas.set(netCount, deferredDeltas.getLong(i));
+					deferredCounts.set(netCount, deferredCounts.getLong(i));
+					++netCount;
+				}
+			}
+
+			netIndex.clear();
+
+			if (!owner.listeners.isEmpty()) {
+				for (int i = 0; i < netCount; ++i) {
+					final long delta = deferredDeltas.getLong(i);
+
+					if (delta > 0) {
+						sendAccept(deferredArticles.get(i), deferredHandles.getInt(i), delta, deferredCounts.getLong(i));
+					} else if (delta < 0) {
+						sendSupply(deferredArticles.get(i), deferredHandles.getInt(i), -delta, deferredCounts.getLong(i));
+					}
+				}
+			}
+
+			truncateDeferred(0);
+		}
+
+		if (capacityDelta < 0) {
+			sendCapacityChange(capacityDelta);
+		}
+	}
+
 	public void sendFirstListenerUpdate(StorageListener listener, long capacity) {
 		listener.onCapacityChange(owner, capacity);
 
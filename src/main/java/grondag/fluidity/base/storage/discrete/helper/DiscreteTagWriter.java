@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.storage.discrete.helper;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+
+import grondag.fluidity.api.article.StoredArticleView;
+import grondag.fluidity.api.storage.Store;
+
+/**
+ * Retains the saved form of each handle of a discrete store between saves, so that only handles
+ * changed since the last save are serialized again. Saving a store with no changes returns the
+ * list from the last save.<p>
+ *
+ * Entry tags and lists are shared between saves and are never modified once returned, because
+ * saved tags may still be read by other threads after the save. Callers must treat them as read-only.<p>
+ *
+ * The owner must mark handles dirty whenever their content changes - usually through
+ * {@link DiscreteTrackingNotifier#setTagWriter(DiscreteTagWriter)} - and mark everything
+ * dirty when handles are reassigned, for example after compaction or clear.
+ */
+@Experimental
+public class DiscreteTagWriter {
+	protected final Store owner;
+	// saved form of each handle as of the last write, null for empty handles
+	protected final ObjectArrayList<NbtCompound> entries = new ObjectArrayList<>();
+	protected final IntOpenHashSet dirtyHandles = new IntOpenHashSet();
+	protected boolean isAllDirty = true;
+	// result of the last write, null if anything changed since
+	protected NbtList list = null;
+
+	public DiscreteTagWriter(Store owner) {
+		this.owner = owner;
+	}
+
+	public void markDirty(int handle) {
+		if (!isAllDirty && handle >= 0) {
+			dirtyHandles.add(handle);
+			list = null;
+		}
+	}
+
+	public void markAllDirty() {
+		isAllDirty = true;
+		dirtyHandles.clear();
+		list = null;
+	}
+
+	/**
+	 * @return List of entries for all non-empty handles of the owner, in the same layout
+	 * as {@link grondag.fluidity.base.article.StoredDiscreteArticle#toTag()}
+	 */
+	public NbtList write() {
+		if (list != null) {
+			return list;
+		}
+
+		if (isAllDirty) {
+			entries.clear();
+			final int limit = owner.handleCount();
+
+			for (int i = 0; i < limit; i++) {
+				entries.add(entryOf(owner.view(i)));
+			}
+
+			isAllDirty = false;
+		} else {
+			final IntIterator it = dirtyHandles.iterator();
+
+			while (it.hasNext()) {
+				final int handle = it.nextInt();
+
+				while (entries.size() <= handle) {
+					entries.add(null);
+				}
+
+				entries.set(handle, entryOf(owner.view(handle)));
+			}
+
+			dirtyHandles.clear();
+		}
+
+		final NbtList result = new NbtList();
+		final int limit = entries.size();
+
+		for (int i = 0; i < limit; i++) {
+			final NbtCompound entry = entries.get(i);
+
+			if (entry != null) {
+				result.add(entry);
+			}
+		}
+
+		list = result;
+		return result;
+	}
+
+	protected static NbtCompound entryOf(StoredArticleView view) {
+		if (view.isEmpty()) {
+			return null;
+		}
+
+		final NbtCompound result = new NbtCompound();
+		result.put("art", view.article().toTag());
+		result.putLong("count", view.count());
+		return result;
+	}
+}
@@ -21,6 +21,7 @@ import grondag.fluidity.api.article.Article;
 import grondag.fluidity.api.storage.StorageListener;
 import grondag.fluidity.base.article.StoredDiscreteArticle;
 import grondag.fluidity.base.storage.AbstractStore;
+import grondag.fluidity.base.transact.UndoJournal;
 
 @Experimental
 public class DiscreteTrackingNotifier extends DiscreteNotifier {
@@ -28,6 +29,8 @@ public class DiscreteTrackingNotifier extends DiscreteNotifier {
 	protected long count;
 	protected int articleCount = 0;
 	protected DiscreteTrackingJournal journal = null;
+	protected UndoJournal undoJournal = null;
+	protected DiscreteTagWriter tagWriter = null;
 
 	public DiscreteTrackingNotifier(long capacity, AbstractStore<? extends StoredDiscreteArticle, ?> owner) {
 		super(owner);
@@ -37,7 +40,7 @@ public class DiscreteTrackingNotifier extends DiscreteNotifier {
 	@Override
 	public void notifySupply(Article item, int handle, long delta, long newCount) {
 		if (delta > 0) {
-			journal(item, -delta);
+			journal(item, handle, -delta);
 			count -= delta;
 			super.notifySupply(item, handle, delta, newCount);
 
@@ -50,7 +53,7 @@ public class DiscreteTrackingNotifier extends DiscreteNotifier {
 	@Override
 	public void notifyAccept(Article item, int handle, long delta, long newCount) {
 		if (delta > 0) {
-			journal(item, delta);
+			journal(item, handle, delta);
 			count += delta;
 			super.notifyAccept(item, handle, delta, newCount);
 
@@ -78,6 +81,10 @@ public class DiscreteTrackingNotifier extends DiscreteNotifier {
 			journal.capacityDelta += capacityDelta;
 		}
 
+		if(undoJournal != null) {
+			undoJournal.append(CAPACITY_HANDLE, null, capacityDelta);
+		}
+
 		capacity += capacityDelta;
 		super.notifyCapacityChange(capacityDelta);
 	}
@@ -107,10 +114,37 @@ public class DiscreteTrackingNotifier extends DiscreteNotifier {
 		articleCount = 0;
 	}
 
-	protected void journal(Article article, long delta) {
+	protected void journal(Article article, int handle, long delta) {
 		if(journal != null) {
 			journal.changes.addTo(article, delta);
 		}
+
+		if(undoJournal != null) {
+			undoJournal.append(handle, article, delta);
+		}
+
+		if(tagWriter != null) {
+			tagWriter.markDirty(handle);
+		}
+	}
+
+	/**
+	 * Count and capacity changes will be appended to the given journal while it is active.
+	 * Capacity changes have a null article and handle {@link #CAPACITY_HANDLE}.
+	 *
+	 * @param undoJournal journal to receive changes, or null to stop
+	 */
+	public void setUndoJournal(UndoJournal undoJournal) {
+		this.undoJournal = undoJournal;
+	}
+
+	/**
+	 * Handles with count changes will be marked dirty in the given writer.
+	 *
+	 * @param tagWriter writer to receive changes, or null to stop
+	 */
+	public void setTagWriter(DiscreteTagWriter tagWriter) {
+		this.tagWriter = tagWriter;
 	}
 
 	public DiscreteTrackingJournal beginNewJournalAndReturnPrior() {
@@ -132,4 +166,6 @@ public class DiscreteTrackingNotifier extends DiscreteNotifier {
 	public DiscreteTrackingJournal journal() {
 		return journal;
 	}
+
+	public static final int CAPACITY_HANDLE = -1;
 }
@@ -34,4 +34,14 @@ public interface ArticleManager<V extends StoredArticle> {
 	V get(Article key);
 
 	void clear();
+
+	/**
+	 * Called by stores after an article becomes empty and listeners have been notified.
+	 * Managers that recycle handles may then assign the handle to a different article.
+	 *
+	 * @param article stored article that is now empty
+	 */
+	default void release(V article) {
+		// NOOP
+	}
 }
@@ -45,12 +45,13 @@ public class FixedArticleManager<V extends AbstractStoredArticle> extends Abstra
 
 	@Override
 	public V findOrCreateArticle(Article key) {
+		final int id = key.id();
 		int firstUnused = -1;
 
 		for(int i = 0; i < handleCount; i++) {
 			final V candidate = articles[i];
 
-			if(candidate.article().equals(key)) {
+			if(candidate.article().id() == id) {
 				return candidate;
 			} else if (firstUnused == -1 && candidate.isEmpty()) {
 				firstUnused = i;
@@ -83,10 +84,12 @@ public class FixedArticleManager<V extends AbstractStoredArticle> extends Abstra
 
 	@Override
 	public V get(Article key) {
+		final int id = key.id();
+
 		for(int i = 0; i < handleCount; i++) {
 			final V candidate = articles[i];
 
-			if(candidate.article().equals(key)) {
+			if(candidate.article().id() == id) {
 				return candidate;
 			}
 		}
@@ -18,7 +18,7 @@ package grondag.fluidity.base.storage.helper;
 import java.lang.reflect.Array;
 import java.util.function.Supplier;
 
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import org.jetbrains.annotations.ApiStatus.Experimental;
 
 import net.minecraft.util.math.MathHelper;
@@ -29,7 +29,8 @@ import grondag.fluidity.base.article.StoredArticle;
 @SuppressWarnings("unchecked")
 @Experimental
 public class FlexibleArticleManager<V extends StoredArticle> extends AbstractArticleManager<V> {
-	protected final Object2ObjectOpenHashMap<Article, V> articles = new Object2ObjectOpenHashMap<>();
+	// keyed by article id
+	protected final Int2ObjectOpenHashMap<V> articles = new Int2ObjectOpenHashMap<>();
 
 	protected int nextUnusedHandle = 0;
 	protected V[] handles;
@@ -53,12 +54,13 @@ public class FlexibleArticleManager<V extends StoredArticle> extends AbstractArt
 
 	@Override
 	public V findOrCreateArticle(Article key) {
-		V candidate = articles.get(key);
+		final int id = key.id();
+		V candidate = articles.get(id);
 
 		if(candidate == null) {
 			candidate = getEmptyArticle();
 			candidate.setArticle(key);
-			articles.put(key, candidate);
+			articles.put(id, candidate);
 		}
 
 		return candidate;
@@ -116,7 +118,7 @@ public class FlexibleArticleManager<V extends StoredArticle> extends AbstractArt
 					handles[target] = swap;
 				}
 
-				articles.remove(a.article());
+				articles.remove(a.article().id());
 			}
 		}
 	}
@@ -133,7 +135,7 @@ public class FlexibleArticleManager<V extends StoredArticle> extends AbstractArt
 
 	@Override
 	public V get(Article key) {
-		return articles.get(key);
+		return articles.get(key.id());
 	}
 
 	@Override
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.storage.helper;
+
+import java.lang.reflect.Array;
+import java.util.function.Supplier;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import net.minecraft.util.math.MathHelper;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.base.article.StoredArticle;
+
+/**
+ * Alternative to {@link FlexibleArticleManager} for stores that always have listeners,
+ * and so never reach {@link #compact()}. Handles released by the store when their article becomes
+ * empty go on a free list and are reused for the next new article, so the handle array only grows
+ * to the largest number of distinct articles held at one time.<p>
+ *
+ * Handles of non-empty articles never move. Listeners receive the supply notification that empties a
+ * handle before the handle can be reused, so from their point of view a reused handle is simply a
+ * handle whose article changed.
+ */
+@SuppressWarnings("unchecked")
+@Experimental
+public class RecyclingArticleManager<V extends StoredArticle> extends AbstractArticleManager<V> {
+	// article id to handle
+	protected final Int2IntOpenHashMap index = new Int2IntOpenHashMap();
+	protected final IntArrayList freeHandles = new IntArrayList();
+
+	protected int nextUnusedHandle = 0;
+	protected V[] handles;
+
+	public RecyclingArticleManager(int startingHandleCount, Supplier<V> articleFactory) {
+		super(articleFactory);
+		index.defaultReturnValue(-1);
+
+		startingHandleCount = MathHelper.smallestEncompassingPowerOfTwo(startingHandleCount);
+		final V[] handles = (V[]) Array.newInstance(articleFactory.get().getClass(), startingHandleCount);
+
+		for(int i = 0; i < startingHandleCount; i++) {
+			final V a = articleFactory.get();
+			a.setHandle(i);
+			handles[i] = a;
+		}
+
+		this.handles = handles;
+	}
+
+	@Override
+	public V findOrCreateArticle(Article key) {
+		final int id = key.id();
+		final int handle = index.get(id);
+
+		if(handle != -1) {
+			return handles[handle];
+		}
+
+		final int newHandle = freeHandles.isEmpty() ? getUnusedHandle() : freeHandles.popInt();
+		final V result = handles[newHandle];
+		result.setArticle(key);
+		index.put(id, newHandle);
+		return result;
+	}
+
+	protected int getUnusedHandle() {
+		final int handleCount = handles.length;
+		final int result = nextUnusedHandle++;
+
+		if(result < handleCount) {
+			return result;
+		}
+
+		final int newCount = handleCount * 2;
+		final V[] newHandles = (V[]) Array.newInstance(articleFactory.get().getClass(), newCount);
+		System.arraycopy(handles, 0, newHandles, 0, handleCount);
+
+		for(int i = handleCount; i < newCount; i++) {
+			final V a = articleFactory.get();
+			a.setHandle(i);
+			newHandles[i] = a;
+		}
+
+		handles = newHandles;
+
+		return result;
+	}
+
+	@Override
+	public void release(V article) {
+		if(article.isEmpty() && index.get(article.article().id()) == article.handle()) {
+			index.remove(article.article().id());
+			// don't retain articles that are no longer stored
+			article.setArticle(Article.NOTHING);
+			freeHandles.push(article.handle());
+		}
+	}
+
+	/** Handles are reclaimed as they are released, so there is nothing to do here. */
+	@Override
+	public void compact() {
+		// NOOP
+	}
+
+	@Override
+	public int handleCount() {
+		return nextUnusedHandle;
+	}
+
+	/** Handles beyond {@link #handleCount()} have never been assigned and are not returned. */
+	@Override
+	public V get(int handle) {
+		return handle >= 0 && handle < nextUnusedHandle ? handles[handle] : null;
+	}
+
+	@Override
+	public V get(Article key) {
+		final int handle = index.get(key.id());
+		return handle == -1 ? null : handles[handle];
+	}
+
+	@Override
+	public void clear() {
+		final int limit = nextUnusedHandle;
+
+		// don't retain articles that are no longer stored, or hand out stale content on reuse
+		for (int i = 0; i < limit; i++) {
+			final V a = handles[i];
+			a.setArticle(Article.NOTHING);
+			a.zero();
+		}
+
+		index.clear();
+		freeHandles.clear();
+		nextUnusedHandle = 0;
+	}
+}
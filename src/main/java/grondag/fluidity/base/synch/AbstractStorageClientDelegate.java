@@ -32,6 +32,9 @@ import net.fabricmc.fabric.api.networking.v1.PacketSender;
 public abstract class AbstractStorageClientDelegate<T extends DisplayDelegate> {
 	protected final Int2ObjectOpenHashMap<T> MAP = new Int2ObjectOpenHashMap<>();
 
+	// read on the network thread as packets arrive, cleared on full refresh and disconnect
+	protected final ArticleDictionary dictionary = new ArticleDictionary();
+
 	public final ObjectArrayList<T> LIST = new ObjectArrayList<>();
 
 	protected boolean isSortDirty = false;
@@ -63,6 +66,10 @@ public abstract class AbstractStorageClientDelegate<T extends DisplayDelegate> {
 
 	public abstract void handleFullRefresh(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender);
 
+	public void handleDisconnect(ClientPlayNetworkHandler handler, MinecraftClient client) {
+		dictionary.clear();
+	}
+
 	public int getSortIndex() {
 		return sortIndex;
 	}
@@ -20,6 +20,7 @@ import org.jetbrains.annotations.ApiStatus.Experimental;
 
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
 
 import grondag.fluidity.api.storage.StorageListener;
 import grondag.fluidity.api.storage.Store;
@@ -32,10 +33,13 @@ public abstract class AbstractStorageServerDelegate<T extends AbstractStoredArti
 	protected boolean isFirstUpdate = true;
 	protected boolean capacityChange = true;
 	protected final Int2ObjectOpenHashMap<T> updates = new Int2ObjectOpenHashMap<>();
+	// articles already sent on this channel to the player's connection, shared with other delegates
+	protected final ArticleDictionary dictionary;
 
-	public AbstractStorageServerDelegate(ServerPlayerEntity player, Store storage) {
+	public AbstractStorageServerDelegate(ServerPlayerEntity player, Store storage, Identifier channel) {
 		this.player = player;
 		this.storage = storage;
+		dictionary = ArticleDictionary.forConnection(player, channel);
 		storage.eventStream().startListening(this, true);
 	}
 
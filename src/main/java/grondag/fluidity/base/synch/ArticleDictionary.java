@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.synch;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+
+import grondag.fluidity.api.article.Article;
+
+/**
+ * Articles already sent over a connection, so that later updates can refer to them by a short
+ * index instead of repeating the type, resource and NBT of the article every time.<p>
+ *
+ * The server and client each hold one instance per connection and packet channel and must clear them
+ * at the same point in the packet stream - on full refresh, and on disconnect. Server delegates obtain
+ * theirs from {@link #forConnection(ServerPlayerEntity, Identifier)} so that every delegate writing
+ * to the same client-side instance also shares the same server-side instance.<p>
+ *
+ * Each entry is written as a varint whose low bit is set when the article itself follows, in which case
+ * the reader appends it as the next index. A new article at index zero resets the dictionary, which is how
+ * the writer keeps it from growing past {@link #MAX_SIZE} entries.<p>
+ *
+ * Not thread-safe. Server instances are used on the server thread and client instances on the network thread.
+ */
+@Experimental
+public class ArticleDictionary {
+	public static final int MAX_SIZE = 4096;
+
+	// holding articles keeps their ids from being reused while indexed
+	protected final ObjectArrayList<Article> articles = new ObjectArrayList<>();
+	// article id to dictionary index, server side only
+	protected final Int2IntOpenHashMap indexes = new Int2IntOpenHashMap();
+
+	public ArticleDictionary() {
+		indexes.defaultReturnValue(-1);
+	}
+
+	public void write(PacketByteBuf buf, Article article) {
+		final int index = indexes.get(article.id());
+
+		if (index == -1) {
+			if (articles.size() >= MAX_SIZE) {
+				clear();
+			}
+
+			final int newIndex = articles.size();
+			articles.add(article);
+			indexes.put(article.id(), newIndex);
+			buf.writeVarInt((newIndex << 1) | 1);
+			article.toPacket(buf);
+		} else {
+			buf.writeVarInt(index << 1);
+		}
+	}
+
+	public Article read(PacketByteBuf buf) {
+		final int code = buf.readVarInt();
+		final int index = code >>> 1;
+
+		if ((code & 1) == 0) {
+			if (index >= articles.size()) {
+				throw new IllegalStateException("Received unknown article dictionary index " + index);
+			}
+
+			return articles.get(index);
+		}
+
+		final Article article = Article.fromPacket(buf);
+
+		if (index == 0) {
+			clear();
+		}
+
+		if (index != articles.size()) {
+			throw new IllegalStateException("Article dictionary out of sync: expected index " + articles.size() + " but received " + index);
+		}
+
+		articles.add(article);
+		return article;
+	}
+
+	public int size() {
+		return articles.size();
+	}
+
+	public void clear() {
+		articles.clear();
+		indexes.clear();
+	}
+
+	// server thread only
+	private static final Object2ObjectOpenHashMap<ServerPlayNetworkHandler, Object2ObjectOpenHashMap<Identifier, ArticleDictionary>> CONNECTIONS = new Object2ObjectOpenHashMap<>();
+
+	/**
+	 * @param player Player receiving the updates
+	 * @param channel Any packet id that identifies the client-side dictionary, usually the full refresh packet
+	 * @return Server-side dictionary shared by all delegates sending on the channel to the player's connection
+	 */
+	public static ArticleDictionary forConnection(ServerPlayerEntity player, Identifier channel) {
+		return forConnection(player.networkHandler, channel);
+	}
+
+	/**
+	 * @param handler Connection receiving the updates
+	 * @param channel Any packet id that identifies the client-side dictionary, usually the full refresh packet
+	 * @return Server-side dictionary shared by all delegates sending on the channel to the connection
+	 */
+	public static ArticleDictionary forConnection(ServerPlayNetworkHandler handler, Identifier channel) {
+		return CONNECTIONS.computeIfAbsent(handler, h -> new Object2ObjectOpenHashMap<>()).computeIfAbsent(channel, c -> new ArticleDictionary());
+	}
+
+	/** Releases dictionaries of a closed connection. */
+	public static void onDisconnect(ServerPlayNetworkHandler handler) {
+		CONNECTIONS.remove(handler);
+	}
+}
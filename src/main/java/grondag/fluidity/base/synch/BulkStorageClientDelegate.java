@@ -40,12 +40,13 @@ public class BulkStorageClientDelegate extends AbstractStorageClientDelegate<Bul
 	 */
 
 
-	protected BulkDisplayDelegate[] readItems(PacketByteBuf buf) {
+	protected BulkDisplayDelegate[] readItems(PacketByteBuf buf, int wireVersion) {
 		final int limit = buf.readInt();
 		final BulkDisplayDelegate[] items = new BulkDisplayDelegate[limit];
 
 		for (int i = 0; i < limit; i++) {
-			items[i] = BulkDisplayDelegate.create(Article.fromPacket(buf), new Fraction(buf), buf.readVarInt());
+			final Article article = wireVersion == Fraction.WIRE_COMPACT ? dictionary.read(buf) : Article.fromPacket(buf);
+			items[i] = BulkDisplayDelegate.create(article, new Fraction(buf, wireVersion), buf.readVarInt());
 		}
 
 		return items;
@@ -53,8 +54,16 @@ public class BulkStorageClientDelegate extends AbstractStorageClientDelegate<Bul
 
 	@Override
 	public void handleUpdateWithCapacity(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
-		final BulkDisplayDelegate[] items = readItems(buffer);
-		final Fraction newCapacity = new Fraction(buffer);
+		handleUpdateWithCapacity(client, buffer, Fraction.WIRE_LEGACY);
+	}
+
+	public void handleUpdateWithCapacityCompact(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
+		handleUpdateWithCapacity(client, buffer, Fraction.WIRE_COMPACT);
+	}
+
+	protected void handleUpdateWithCapacity(MinecraftClient client, PacketByteBuf buffer, int wireVersion) {
+		final BulkDisplayDelegate[] items = readItems(buffer, wireVersion);
+		final Fraction newCapacity = new Fraction(buffer, wireVersion);
 
 		if (client.isOnThread()) {
 			handleUpdateInner(items, newCapacity);
@@ -65,7 +74,15 @@ public class BulkStorageClientDelegate extends AbstractStorageClientDelegate<Bul
 
 	@Override
 	public void handleUpdate(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
-		final BulkDisplayDelegate[] items = readItems(buffer);
+		handleUpdate(client, buffer, Fraction.WIRE_LEGACY);
+	}
+
+	public void handleUpdateCompact(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
+		handleUpdate(client, buffer, Fraction.WIRE_COMPACT);
+	}
+
+	protected void handleUpdate(MinecraftClient client, PacketByteBuf buffer, int wireVersion) {
+		final BulkDisplayDelegate[] items = readItems(buffer, wireVersion);
 
 		if (client.isOnThread()) {
 			handleUpdateInner(items, null);
@@ -76,8 +93,20 @@ public class BulkStorageClientDelegate extends AbstractStorageClientDelegate<Bul
 
 	@Override
 	public void handleFullRefresh(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
-		final BulkDisplayDelegate[] items = readItems(buffer);
-		final Fraction newCapacity = new Fraction(buffer);
+		handleFullRefresh(client, buffer, Fraction.WIRE_LEGACY);
+	}
+
+	public void handleFullRefreshCompact(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
+		handleFullRefresh(client, buffer, Fraction.WIRE_COMPACT);
+	}
+
+	protected void handleFullRefresh(MinecraftClient client, PacketByteBuf buffer, int wireVersion) {
+		if (wireVersion == Fraction.WIRE_COMPACT) {
+			dictionary.clear();
+		}
+
+		final BulkDisplayDelegate[] items = readItems(buffer, wireVersion);
+		final Fraction newCapacity = new Fraction(buffer, wireVersion);
 
 		if (client.isOnThread()) {
 			handleFullRefreshInner(items, newCapacity);
@@ -29,7 +29,7 @@ import grondag.fluidity.base.storage.bulk.BulkStorageListener;
 @Experimental
 public class BulkStorageServerDelegate extends AbstractStorageServerDelegate<StoredBulkArticle> implements BulkStorageListener {
 	public BulkStorageServerDelegate(ServerPlayerEntity player, Store storage) {
-		super(player, storage);
+		super(player, storage, BulkStorageUpdateS2C.ID_FULL_REFRESH_COMPACT);
 	}
 
 	@Override
@@ -67,22 +67,27 @@ public class BulkStorageServerDelegate extends AbstractStorageServerDelegate<Sto
 			return;
 		}
 
+		if(isFirstUpdate) {
+			dictionary.clear();
+		}
+
+		final int wireVersion = BulkStorageUpdateS2C.wireVersion(player);
 		final PacketByteBuf buf = BulkStorageUpdateS2C.begin(updates.size());
 
 		for(final StoredBulkArticle a : updates.values()) {
-			BulkStorageUpdateS2C.append(buf, a.article(), a.amount(), a.handle());
+			BulkStorageUpdateS2C.append(buf, dictionary, a.article(), a.amount(), a.handle(), wireVersion);
 		}
 
 		if(isFirstUpdate) {
 			// UGLY: find way to avoid unreliable cast here and in next block
-			BulkStorageUpdateS2C.sendFullRefresh(player, buf, storage.volume());
+			BulkStorageUpdateS2C.sendFullRefresh(player, buf, storage.volume(), wireVersion);
 			isFirstUpdate = false;
 			capacityChange = false;
 		} else if (capacityChange) {
-			BulkStorageUpdateS2C.sendUpdateWithCapacity(player, buf, storage.volume());
+			BulkStorageUpdateS2C.sendUpdateWithCapacity(player, buf, storage.volume(), wireVersion);
 			capacityChange = false;
 		} else {
-			BulkStorageUpdateS2C.sendUpdate(player, buf);
+			BulkStorageUpdateS2C.sendUpdate(player, buf, wireVersion);
 		}
 
 		updates.clear();
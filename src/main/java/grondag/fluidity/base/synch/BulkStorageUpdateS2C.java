@@ -39,25 +39,47 @@ public final class BulkStorageUpdateS2C {
 		return buf;
 	}
 
-	public static PacketByteBuf append(PacketByteBuf buf, Article article, Fraction amount, int handle) {
-		article.toPacket(buf);
-		amount.writeBuffer(buf);
+	/**
+	 * Fraction wire format is negotiated by channel: clients that can read {@link Fraction#WIRE_COMPACT}
+	 * register the compact channels, and all other clients receive {@link Fraction#WIRE_LEGACY}
+	 * on the original channels.
+	 *
+	 * @param player Player receiving the updates
+	 * @return Fraction wire format to use for packets sent to the player
+	 */
+	public static int wireVersion(ServerPlayerEntity player) {
+		return ServerPlayNetworking.canSend(player, ID_FULL_REFRESH_COMPACT) ? Fraction.WIRE_COMPACT : Fraction.WIRE_LEGACY;
+	}
+
+	/**
+	 * On the compact channels, writes the article as a dictionary reference, sending the article itself
+	 * only the first time it is written to the dictionary. Full refresh packets must start with an empty
+	 * dictionary. The original channels always carry the full article, as older clients expect.
+	 */
+	public static PacketByteBuf append(PacketByteBuf buf, ArticleDictionary dictionary, Article article, Fraction amount, int handle, int wireVersion) {
+		if (wireVersion == Fraction.WIRE_COMPACT) {
+			dictionary.write(buf, article);
+		} else {
+			article.toPacket(buf);
+		}
+
+		amount.writeBuffer(buf, wireVersion);
 		buf.writeVarInt(handle);
 		return buf;
 	}
 
-	public static void sendFullRefresh(ServerPlayerEntity player, PacketByteBuf buf, Fraction capacity) {
-		capacity.writeBuffer(buf);
-		send(ID_FULL_REFRESH, player, buf);
+	public static void sendFullRefresh(ServerPlayerEntity player, PacketByteBuf buf, Fraction capacity, int wireVersion) {
+		capacity.writeBuffer(buf, wireVersion);
+		send(wireVersion == Fraction.WIRE_COMPACT ? ID_FULL_REFRESH_COMPACT : ID_FULL_REFRESH, player, buf);
 	}
 
-	public static void sendUpdateWithCapacity(ServerPlayerEntity player, PacketByteBuf buf, Fraction capacity) {
-		capacity.writeBuffer(buf);
-		send(ID_UPDATE_WITH_CAPACITY, player, buf);
+	public static void sendUpdateWithCapacity(ServerPlayerEntity player, PacketByteBuf buf, Fraction capacity, int wireVersion) {
+		capacity.writeBuffer(buf, wireVersion);
+		send(wireVersion == Fraction.WIRE_COMPACT ? ID_UPDATE_WITH_CAPACITY_COMPACT : ID_UPDATE_WITH_CAPACITY, player, buf);
 	}
 
-	public static void sendUpdate(ServerPlayerEntity player, PacketByteBuf buf) {
-		send(ID_UPDATE, player, buf);
+	public static void sendUpdate(ServerPlayerEntity player, PacketByteBuf buf, int wireVersion) {
+		send(wireVersion == Fraction.WIRE_COMPACT ? ID_UPDATE_COMPACT : ID_UPDATE, player, buf);
 	}
 
 	private static void send(Identifier id, ServerPlayerEntity player, PacketByteBuf buf) {
@@ -68,4 +90,9 @@ public final class BulkStorageUpdateS2C {
 	public static Identifier ID_FULL_REFRESH = new Identifier(Fluidity.MOD_ID, "ffrs2c");
 	public static Identifier ID_UPDATE = new Identifier(Fluidity.MOD_ID, "fuds2c");
 	public static Identifier ID_UPDATE_WITH_CAPACITY = new Identifier(Fluidity.MOD_ID, "fucs2c");
+
+	// same packets with fractions in compact wire format
+	public static Identifier ID_FULL_REFRESH_COMPACT = new Identifier(Fluidity.MOD_ID, "ffrs2c_c");
+	public static Identifier ID_UPDATE_COMPACT = new Identifier(Fluidity.MOD_ID, "fuds2c_c");
+	public static Identifier ID_UPDATE_WITH_CAPACITY_COMPACT = new Identifier(Fluidity.MOD_ID, "fucs2c_c");
 }
@@ -38,12 +38,13 @@ public class DiscreteStorageClientDelegate extends AbstractStorageClientDelegate
 	 */
 
 
-	protected DiscreteDisplayDelegate[] readItems(PacketByteBuf buf) {
+	protected DiscreteDisplayDelegate[] readItems(PacketByteBuf buf, boolean compact) {
 		final int limit = buf.readInt();
 		final DiscreteDisplayDelegate[] items = new DiscreteDisplayDelegate[limit];
 
 		for (int i = 0; i < limit; i++) {
-			items[i] = DiscreteDisplayDelegate.create(Article.fromPacket(buf), buf.readVarLong(), buf.readVarInt());
+			final Article article = compact ? dictionary.read(buf) : Article.fromPacket(buf);
+			items[i] = DiscreteDisplayDelegate.create(article, buf.readVarLong(), buf.readVarInt());
 		}
 
 		return items;
@@ -51,7 +52,15 @@ public class DiscreteStorageClientDelegate extends AbstractStorageClientDelegate
 
 	@Override
 	public void handleUpdateWithCapacity(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
-		final DiscreteDisplayDelegate[] items = readItems(buffer);
+		handleUpdateWithCapacity(client, buffer, false);
+	}
+
+	public void handleUpdateWithCapacityCompact(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
+		handleUpdateWithCapacity(client, buffer, true);
+	}
+
+	protected void handleUpdateWithCapacity(MinecraftClient client, PacketByteBuf buffer, boolean compact) {
+		final DiscreteDisplayDelegate[] items = readItems(buffer, compact);
 		final long newCapacity = buffer.readVarLong();
 
 		if (client.isOnThread()) {
@@ -63,7 +72,15 @@ public class DiscreteStorageClientDelegate extends AbstractStorageClientDelegate
 
 	@Override
 	public void handleUpdate(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
-		final DiscreteDisplayDelegate[] items = readItems(buffer);
+		handleUpdate(client, buffer, false);
+	}
+
+	public void handleUpdateCompact(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
+		handleUpdate(client, buffer, true);
+	}
+
+	protected void handleUpdate(MinecraftClient client, PacketByteBuf buffer, boolean compact) {
+		final DiscreteDisplayDelegate[] items = readItems(buffer, compact);
 
 		if (client.isOnThread()) {
 			handleUpdateInner(items, -1);
@@ -74,7 +91,19 @@ public class DiscreteStorageClientDelegate extends AbstractStorageClientDelegate
 
 	@Override
 	public void handleFullRefresh(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
-		final DiscreteDisplayDelegate[] items = readItems(buffer);
+		handleFullRefresh(client, buffer, false);
+	}
+
+	public void handleFullRefreshCompact(MinecraftClient client, ClientPlayNetworkHandler handler, PacketByteBuf buffer, PacketSender responseSender) {
+		handleFullRefresh(client, buffer, true);
+	}
+
+	protected void handleFullRefresh(MinecraftClient client, PacketByteBuf buffer, boolean compact) {
+		if (compact) {
+			dictionary.clear();
+		}
+
+		final DiscreteDisplayDelegate[] items = readItems(buffer, compact);
 		final long newCapacity = buffer.readVarLong();
 
 		if (client.isOnThread()) {
@@ -128,6 +157,12 @@ public class DiscreteStorageClientDelegate extends AbstractStorageClientDelegate
 				MAP.remove(update.handle());
 				LIST.remove(prior);
 				usedCapacity -= prior.getCount();
+			} else if (!prior.article().equals(update.article())) {
+				// handle was emptied and reused for another article since the last update
+				LIST.remove(prior);
+				MAP.put(update.handle(), update);
+				addToListIfIncluded(update);
+				usedCapacity += update.getCount() - prior.getCount();
 			} else {
 				usedCapacity += update.getCount() - prior.getCount();
 				prior.setCount(update.getCount());
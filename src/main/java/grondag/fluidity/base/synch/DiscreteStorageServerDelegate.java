@@ -28,7 +28,7 @@ import grondag.fluidity.base.storage.discrete.DiscreteStorageListener;
 @Experimental
 public class DiscreteStorageServerDelegate extends AbstractStorageServerDelegate<StoredDiscreteArticle> implements DiscreteStorageListener {
 	public DiscreteStorageServerDelegate(ServerPlayerEntity player, Store storage) {
-		super(player, storage);
+		super(player, storage, DiscreteStorageUpdateS2C.ID_FULL_REFRESH_COMPACT);
 	}
 
 	@Override
@@ -66,21 +66,26 @@ public class DiscreteStorageServerDelegate extends AbstractStorageServerDelegate
 			return;
 		}
 
+		if(isFirstUpdate) {
+			dictionary.clear();
+		}
+
+		final boolean compact = DiscreteStorageUpdateS2C.isCompact(player);
 		final PacketByteBuf buf = DiscreteStorageUpdateS2C.begin(updates.size());
 
 		for(final StoredDiscreteArticle a : updates.values()) {
-			DiscreteStorageUpdateS2C.append(buf, a.article(), a.count(), a.handle());
+			DiscreteStorageUpdateS2C.append(buf, dictionary, a.article(), a.count(), a.handle(), compact);
 		}
 
 		if(isFirstUpdate) {
-			DiscreteStorageUpdateS2C.sendFullRefresh(player, buf, storage.capacity());
+			DiscreteStorageUpdateS2C.sendFullRefresh(player, buf, storage.capacity(), compact);
 			isFirstUpdate = false;
 			capacityChange = false;
 		} else if (capacityChange) {
-			DiscreteStorageUpdateS2C.sendUpdateWithCapacity(player, buf, storage.capacity());
+			DiscreteStorageUpdateS2C.sendUpdateWithCapacity(player, buf, storage.capacity(), compact);
 			capacityChange = false;
 		} else {
-			DiscreteStorageUpdateS2C.sendUpdate(player, buf);
+			DiscreteStorageUpdateS2C.sendUpdate(player, buf, compact);
 		}
 
 		updates.clear();
@@ -38,25 +38,46 @@ public final class DiscreteStorageUpdateS2C {
 		return buf;
 	}
 
-	public static PacketByteBuf append(PacketByteBuf buf, Article article, long count, int handle) {
-		article.toPacket(buf);
+	/**
+	 * Article encoding is negotiated by channel: clients that can read {@link ArticleDictionary} references
+	 * register the compact channels, and all other clients receive full articles on the original channels.
+	 *
+	 * @param player Player receiving the updates
+	 * @return true if packets sent to the player should use the compact channels
+	 */
+	public static boolean isCompact(ServerPlayerEntity player) {
+		return ServerPlayNetworking.canSend(player, ID_FULL_REFRESH_COMPACT);
+	}
+
+	/**
+	 * On the compact channels, writes the article as a dictionary reference, sending the article itself
+	 * only the first time it is written to the dictionary. Full refresh packets must start with an empty
+	 * dictionary. The original channels always carry the full article, as older clients expect.
+	 */
+	public static PacketByteBuf append(PacketByteBuf buf, ArticleDictionary dictionary, Article article, long count, int handle, boolean compact) {
+		if (compact) {
+			dictionary.write(buf, article);
+		} else {
+			article.toPacket(buf);
+		}
+
 		buf.writeVarLong(count);
 		buf.writeVarInt(handle);
 		return buf;
 	}
 
-	public static void sendFullRefresh(ServerPlayerEntity player, PacketByteBuf buf, long capacity) {
+	public static void sendFullRefresh(ServerPlayerEntity player, PacketByteBuf buf, long capacity, boolean compact) {
 		buf.writeVarLong(capacity);
-		send(ID_FULL_REFRESH, player, buf);
+		send(compact ? ID_FULL_REFRESH_COMPACT : ID_FULL_REFRESH, player, buf);
 	}
 
-	public static void sendUpdateWithCapacity(ServerPlayerEntity player, PacketByteBuf buf, long capacity) {
+	public static void sendUpdateWithCapacity(ServerPlayerEntity player, PacketByteBuf buf, long capacity, boolean compact) {
 		buf.writeVarLong(capacity);
-		send(ID_UPDATE_WITH_CAPACITY, player, buf);
+		send(compact ? ID_UPDATE_WITH_CAPACITY_COMPACT : ID_UPDATE_WITH_CAPACITY, player, buf);
 	}
 
-	public static void sendUpdate(ServerPlayerEntity player, PacketByteBuf buf) {
-		send(ID_UPDATE, player, buf);
+	public static void sendUpdate(ServerPlayerEntity player, PacketByteBuf buf, boolean compact) {
+		send(compact ? ID_UPDATE_COMPACT : ID_UPDATE, player, buf);
 	}
 
 	private static void send(Identifier id, ServerPlayerEntity player, PacketByteBuf buf) {
@@ -67,4 +88,9 @@ public final class DiscreteStorageUpdateS2C {
 	public static Identifier ID_FULL_REFRESH = new Identifier(Fluidity.MOD_ID, "dfrs2c");
 	public static Identifier ID_UPDATE = new Identifier(Fluidity.MOD_ID, "duds2c");
 	public static Identifier ID_UPDATE_WITH_CAPACITY = new Identifier(Fluidity.MOD_ID, "ducs2c");
+
+	// same packets with articles as dictionary references
+	public static Identifier ID_FULL_REFRESH_COMPACT = new Identifier(Fluidity.MOD_ID, "dfrs2c_c");
+	public static Identifier ID_UPDATE_COMPACT = new Identifier(Fluidity.MOD_ID, "duds2c_c");
+	public static Identifier ID_UPDATE_WITH_CAPACITY_COMPACT = new Identifier(Fluidity.MOD_ID, "ducs2c_c");
 }
@@ -25,6 +25,7 @@ import net.minecraft.text.Text;
 import net.minecraft.text.TranslatableText;
 
 import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.fraction.Fraction;
 
 /**
  * Client-side representation of server inventory that supports
@@ -98,7 +99,7 @@ public interface DisplayDelegate {
 			int result = Long.compare(o1.getCount(), o2.getCount());
 
 			if(result == 0) {
-				result =  Long.compare(o1.numerator() * o2.divisor(), o2.numerator() * o1.divisor());
+				result = Fraction.compareProducts(o1.numerator(), o2.divisor(), o2.numerator(), o1.divisor());
 			}
 
 			return result == 0 ? SORT_BY_NAME_ASC.compare(o1, o2) : result;
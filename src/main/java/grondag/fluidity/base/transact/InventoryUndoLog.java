@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.transact;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+
+import net.minecraft.item.ItemStack;
+
+/**
+ * Slot-level alternative to {@link TransactionHelper#prepareInventoryRollbackState(grondag.fluidity.api.storage.InventoryStore)}.
+ * Instead of copying every stack when a transaction first touches an inventory, copies only the
+ * slots that are changed, once per slot per transaction level, and restores only those slots.<p>
+ *
+ * Inventories must call {@link #record(int, ItemStack)} before changing a slot, {@link #enter()} when preparing
+ * rollback state and {@link #exit(boolean)} when applying it. Changes made directly to stacks obtained
+ * from the inventory are not recorded.
+ */
+@Experimental
+public class InventoryUndoLog {
+	protected final SlotRestorer restorer;
+
+	// log position at start of each open transaction level
+	protected final IntArrayList marks = new IntArrayList();
+	protected final IntArrayList slots = new IntArrayList();
+	protected final ObjectArrayList<ItemStack> stacks = new ObjectArrayList<>();
+
+	// generation in which each slot was last recorded, to copy each slot at most once per level
+	protected final int[] slotGenerations;
+	protected final IntArrayList parentGenerations = new IntArrayList();
+	protected int generation = 0;
+	protected int nextGeneration = 1;
+	protected boolean isRestoring = false;
+
+	public InventoryUndoLog(int slotCount, SlotRestorer restorer) {
+		slotGenerations = new int[slotCount];
+		this.restorer = restorer;
+	}
+
+	/**
+	 * @return true if a transaction level is open and changes will be recorded
+	 */
+	public boolean isActive() {
+		return !marks.isEmpty();
+	}
+
+	/**
+	 * Call before changing the given slot.
+	 *
+	 * @param slot slot about to change
+	 * @param currentStack stack in the slot before the change - will be copied if recorded
+	 */
+	public void record(int slot, ItemStack currentStack) {
+		if (!marks.isEmpty() && !isRestoring && slotGenerations[slot] != generation) {
+			slotGenerations[slot] = generation;
+			slots.add(slot);
+			stacks.add(currentStack.isEmpty() ? ItemStack.EMPTY : currentStack.copy());
+		}
+	}
+
+	/**
+	 * Call when the inventory prepares rollback state for a transaction.
+	 */
+	public void enter() {
+		marks.push(slots.size());
+		parentGenerations.push(generation);
+		generation = nextGeneration++;
+	}
+
+	/**
+	 * Call when the inventory applies rollback state for a transaction. On rollback, restores
+	 * recorded slots in reverse order. On commit, recorded slots are kept so that an
+	 * enclosing transaction can still reverse them.
+	 *
+	 * @param isCommitted true if the transaction was committed
+	 */
+	public void exit(boolean isCommitted) {
+		final int mark = marks.popInt();
+
+		if (!isCommitted) {
+			isRestoring = true;
+
+			try {
+				for (int i = slots.size() - 1; i >= mark; --i) {
+					restorer.restore(slots.getInt(i), stacks.get(i));
+				}
+			} finally {
+				isRestoring = false;
+			}
+
+			slots.size(mark);
+			stacks.size(mark);
+		}
+
+		generation = parentGenerations.popInt();
+
+		if (marks.isEmpty()) {
+			slots.clear();
+			stacks.clear();
+
+			// keep generations from wrapping into values still present in slotGenerations
+			if (nextGeneration > GENERATION_RESET_THRESHOLD) {
+				Arrays.fill(slotGenerations, 0);
+				nextGeneration = 1;
+			}
+		}
+	}
+
+	private static final int GENERATION_RESET_THRESHOLD = 1 << 30;
+
+	@FunctionalInterface
+	public interface SlotRestorer {
+		/**
+		 * Replaces the contents of the given slot, notifying listeners as needed.
+		 *
+		 * @param slot slot to restore
+		 * @param stack stack to place in the slot - owned by the inventory after this call
+		 */
+		void restore(int slot, ItemStack stack);
+	}
+}
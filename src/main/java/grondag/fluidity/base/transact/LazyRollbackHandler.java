@@ -39,6 +39,26 @@ public class LazyRollbackHandler {
 		this.participant = participant;
 	}
 
+	/**
+	 * Creates a handler that uses the given journal for rollback instead of state snapshots.
+	 *
+	 * @param journal receives changes while the participant is enlisted
+	 * @param participant participant to enlist
+	 */
+	public LazyRollbackHandler(UndoJournal journal, TransactionParticipant participant) {
+		this(journal::prepare, journal::apply, participant);
+	}
+
+	/**
+	 * Enlists the participant in the current transaction, if one is open, without
+	 * preparing rollback state. Enlisting locks the participant to the calling thread
+	 * until the root transaction closes, so call this before reading any state
+	 * that a subsequent change depends on.
+	 */
+	public void enlist() {
+		Transaction.selfEnlistIfOpen(participant);
+	}
+
 	public void prepareIfNeeded() {
 		Transaction.selfEnlistIfOpen(participant);
 
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.base.transact;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.ApiStatus.Experimental;
+import org.jetbrains.annotations.Nullable;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.fraction.Fraction;
+import grondag.fluidity.api.fraction.MutableFraction;
+
+/**
+ * Journal-based alternative to snapshot rollback state for {@link LazyRollbackHandler}.
+ * Stores append an entry for each change as it is made, and on rollback the entries are
+ * replayed in reverse so that the cost of rollback is proportional to the number of changes
+ * instead of the size of the store.<p>
+ *
+ * Entries are kept in primitive arrays that are retained and reused for the life of the journal,
+ * so appending and committing do not allocate once the arrays have grown to a working size.
+ * Handle and article are opaque to the journal - stores may use them however they like, for example
+ * a {@code null} article to mark a capacity change.<p>
+ *
+ * To use, construct the handler with {@link LazyRollbackHandler#LazyRollbackHandler(UndoJournal, grondag.fluidity.api.transact.TransactionParticipant)},
+ * or call {@link #prepare()} and {@link #apply(Object, boolean)} from existing rollback state methods.
+ * Entries appended while no transaction is open, or while the journal is replaying, are ignored.<p>
+ *
+ * Fractional entries can only be appended if the replayer is a {@link FractionReplayer}.
+ */
+@Experimental
+public class UndoJournal {
+	protected final Replayer replayer;
+	// same as replayer if it can reverse fractional entries, null otherwise
+	protected final @Nullable FractionReplayer fractionReplayer;
+
+	// log position at start of each open transaction level
+	protected final IntArrayList marks = new IntArrayList();
+
+	protected int size = 0;
+	protected int[] handles = new int[INITIAL_CAPACITY];
+	protected Article[] articles = new Article[INITIAL_CAPACITY];
+	// long deltas use wholes only and have a zero divisor
+	protected long[] wholes = new long[INITIAL_CAPACITY];
+	protected long[] numerators = new long[INITIAL_CAPACITY];
+	protected long[] divisors = new long[INITIAL_CAPACITY];
+
+	protected final MutableFraction replayFraction = new MutableFraction();
+	protected boolean isReplaying = false;
+
+	public UndoJournal(Replayer replayer) {
+		this.replayer = replayer;
+		fractionReplayer = replayer instanceof FractionReplayer ? (FractionReplayer) replayer : null;
+	}
+
+	/**
+	 * @return true if a transaction level is open and changes will be recorded
+	 */
+	public boolean isActive() {
+		return !marks.isEmpty() && !isReplaying;
+	}
+
+	public void append(int handle, @Nullable Article article, long delta) {
+		if (isActive()) {
+			final int i = claim();
+			handles[i] = handle;
+			articles[i] = article;
+			wholes[i] = delta;
+			numerators[i] = 0;
+			divisors[i] = 0;
+		}
+	}
+
+	public void append(int handle, @Nullable Article article, Fraction delta) {
+		append(handle, article, delta.whole(), delta.numerator(), delta.divisor());
+	}
+
+	public void append(int handle, @Nullable Article article, long numerator, long divisor) {
+		append(handle, article, 0, numerator, divisor);
+	}
+
+	protected void append(int handle, @Nullable Article article, long whole, long numerator, long divisor) {
+		Preconditions.checkState(fractionReplayer != null, "Fractional undo entries not supported by this replayer");
+
+		if (isActive()) {
+			final int i = claim();
+			handles[i] = handle;
+			articles[i] = article;
+			wholes[i] = whole;
+			numerators[i] = numerator;
+			divisors[i] = divisor;
+		}
+	}
+
+	protected int claim() {
+		final int i = size++;
+
+		if (i == handles.length) {
+			final int newCapacity = i * 2;
+			handles = Arrays.copyOf(handles, newCapacity);
+			articles = Arrays.copyOf(articles, newCapacity);
+			wholes = Arrays.copyOf(wholes, newCapacity);
+			numerators = Arrays.copyOf(numerators, newCapacity);
+			divisors = Arrays.copyOf(divisors, newCapacity);
+		}
+
+		return i;
+	}
+
+	/**
+	 * Call when the store prepares rollback state for a transaction.
+	 */
+	public void enter() {
+		marks.push(size);
+	}
+
+	/**
+	 * Call when the store applies rollback state for a transaction. On rollback, replays entries
+	 * appended since the matching {@link #enter()} in reverse order. On commit, entries are kept so
+	 * that an enclosing transaction can still reverse them.
+	 *
+	 * @param isCommitted true if the transaction was committed
+	 */
+	public void exit(boolean isCommitted) {
+		final int mark = marks.popInt();
+
+		if (!isCommitted) {
+			isReplaying = true;
+
+			try {
+				for (int i = size - 1; i >= mark; --i) {
+					if (divisors[i] == 0) {
+						replayer.undo(handles[i], articles[i], wholes[i]);
+					} else {
+						replayFraction.set(wholes[i], numerators[i], divisors[i]);
+						fractionReplayer.undo(handles[i], articles[i], replayFraction);
+					}
+				}
+			} finally {
+				isReplaying = false;
+				truncate(mark);
+			}
+		} else if (marks.isEmpty()) {
+			truncate(0);
+		}
+	}
+
+	protected void truncate(int newSize) {
+		// release article references
+		Arrays.fill(articles, newSize, size, null);
+		size = newSize;
+	}
+
+	/**
+	 * For use as a {@link LazyRollbackHandler} rollback supplier.
+	 *
+	 * @return this journal, as rollback state
+	 */
+	public Object prepare() {
+		enter();
+		return this;
+	}
+
+	/**
+	 * For use as a {@link LazyRollbackHandler.RollbackHandler}.
+	 *
+	 * @param rollbackState ignored
+	 * @param isCommitted true if the transaction was committed
+	 */
+	public void apply(Object rollbackState, boolean isCommitted) {
+		exit(isCommitted);
+	}
+
+	/**
+	 * Reverses a single change. Calls made by the replayer that would append to the
+	 * journal are ignored.
+	 */
+	@FunctionalInterface
+	public interface Replayer {
+		/**
+		 * @param handle handle given when the entry was appended
+		 * @param article article given when the entry was appended
+		 * @param delta change to be reversed
+		 */
+		void undo(int handle, @Nullable Article article, long delta);
+	}
+
+	/**
+	 * Replayer that can also reverse fractional changes. Required for journals that
+	 * receive fractional entries.
+	 */
+	public interface FractionReplayer extends Replayer {
+		/**
+		 * @param handle handle given when the entry was appended
+		 * @param article article given when the entry was appended
+		 * @param delta change to be reversed - a reused instance that must not be retained
+		 */
+		void undo(int handle, @Nullable Article article, Fraction delta);
+	}
+
+	private static final int INITIAL_CAPACITY = 8;
+}
@@ -16,15 +16,20 @@
 package grondag.fluidity.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
-import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
+import com.google.common.collect.MapMaker;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import org.jetbrains.annotations.ApiStatus.Internal;
 
 import net.minecraft.server.MinecraftServer;
 
+import grondag.fluidity.FluidityConfig;
 import grondag.fluidity.api.transact.Transaction;
 import grondag.fluidity.api.transact.TransactionContext;
 import grondag.fluidity.api.transact.TransactionParticipant;
@@ -39,13 +44,13 @@ public final class TransactionImpl implements Transaction {
 
 		@Override
 		public <T> void setState(T state) {
-			stateStorage.put(contextDelegate, state);
+			states[contextIndex] = state;
 		}
 
 		@Override
 		@SuppressWarnings("unchecked")
 		public <T> T getState() {
-			return (T) stateStorage.get(contextDelegate);
+			return (T) states[contextIndex];
 		}
 
 		@Override
@@ -57,11 +62,21 @@ public final class TransactionImpl implements Transaction {
 	private final ContextImpl context = new ContextImpl();
 	private boolean isOpen = true;
 	private boolean isCommited = false;
-	private final IdentityHashMap<TransactionDelegate, Consumer<TransactionContext>> participants = new IdentityHashMap<>();
-	private final IdentityHashMap<TransactionDelegate, Object> stateStorage = new IdentityHashMap<>();
-	private TransactionDelegate contextDelegate;
 
-	private TransactionImpl() {
+	// Participants are kept in enlistment order in parallel arrays. Most transactions
+	// enlist only a few, so lookup is a linear identity scan until the count passes
+	// HASH_THRESHOLD, at which point an identity hash index is built and kept in sync.
+	private TransactionDelegate[] delegates = new TransactionDelegate[INITIAL_CAPACITY];
+	@SuppressWarnings("unchecked")
+	private Consumer<TransactionContext>[] handlers = new Consumer[INITIAL_CAPACITY];
+	private Object[] states = new Object[INITIAL_CAPACITY];
+	private int participantCount = 0;
+	private Reference2IntOpenHashMap<TransactionDelegate> index = null;
+	private int contextIndex = -1;
+	private final TransactionStack stack;
+
+	private TransactionImpl(TransactionStack stack) {
+		this.stack = stack;
 	}
 
 	@Override
@@ -72,9 +87,17 @@ public final class TransactionImpl implements Transaction {
 	}
 
 	private void clear() {
-		participants.clear();
-		stateStorage.clear();
-		contextDelegate = null;
+		final int count = participantCount;
+		Arrays.fill(delegates, 0, count, null);
+		Arrays.fill(handlers, 0, count, null);
+		Arrays.fill(states, 0, count, null);
+		participantCount = 0;
+
+		if (index != null) {
+			index.clear();
+		}
+
+		contextIndex = -1;
 		isOpen = false;
 		isCommited = false;
 	}
@@ -84,12 +107,12 @@ public final class TransactionImpl implements Transaction {
 			throw new IllegalStateException("Encountered transaction operation for closed transaction.");
 		}
 
-		if (STACK.get(stackPointer) != this) {
-			throw new IndexOutOfBoundsException("Transaction operations must apply to most recent open transaction.");
+		if (stack.thread != Thread.currentThread()) {
+			throw new ConcurrentModificationException("Attempt to modify transaction status from foreign thread");
 		}
 
-		if (!innerLock.isHeldByCurrentThread()) {
-			throw new ConcurrentModificationException("Attempt to modify transaction status from foreign thread");
+		if (stack.current() != this) {
+			throw new IndexOutOfBoundsException("Transaction operations must apply to most recent open transaction.");
 		}
 	}
 
@@ -107,25 +130,28 @@ public final class TransactionImpl implements Transaction {
 		validate();
 		this.isCommited = isCommited;
 
-		participants.forEach((c, r) -> {
-			contextDelegate = c;
-			r.accept(context);
-		});
-
-		clear();
-
-		final boolean root = --stackPointer == -1;
+		// enlistment order
+		final int count = participantCount;
+		final boolean metrics = TransactionMetricsImpl.enabled;
+		final long start = metrics ? System.nanoTime() : 0;
 
-		innerLock.unlock();
-
-		// non-server threads have an additional lock we must release.
-		if (Thread.currentThread() != serverThread) {
-			outerLock.unlock();
+		try {
+			for (int i = 0; i < count; ++i) {
+				contextIndex = i;
+				handlers[i].accept(context);
+			}
 
-			if (root) {
-				// Give other threads (like the server thread) that want to do transactions a
-				// chance to jump in.
-				Thread.yield();
+			if (metrics) {
+				TransactionMetricsImpl.INSTANCE.onClose(isCommited, count, System.nanoTime() - start);
+			}
+		} finally {
+			// a failed handler must not leave the stack unbalanced or participants locked
+			clear();
+
+			if (--stack.pointer == -1) {
+				// participants stay locked until the root closes because
+				// nested commits are only durable once the root commits
+				stack.unlockAll();
 			}
 		}
 	}
@@ -135,62 +161,194 @@ public final class TransactionImpl implements Transaction {
 		validate();
 		final TransactionDelegate d = container.getTransactionDelegate();
 
-		if (!participants.containsKey(d)) {
-			contextDelegate = d;
-			participants.put(d, defaultRollback(d.prepareRollback(context)));
-			contextDelegate = null;
+		if (indexOf(d) == -1) {
+			stack.lock(d);
+
+			if (TransactionMetricsImpl.enabled) {
+				TransactionMetricsImpl.INSTANCE.onEnlist(d);
+			}
+
+			final int i = add(d);
+			contextIndex = i;
+			handlers[i] = defaultRollback(d.prepareRollback(context));
+			contextIndex = -1;
 		}
 
 		return container;
 	}
 
+	private int indexOf(TransactionDelegate d) {
+		if (index != null) {
+			return index.getInt(d);
+		}
+
+		final int count = participantCount;
+		final TransactionDelegate[] delegates = this.delegates;
+
+		for (int i = 0; i < count; ++i) {
+			if (delegates[i] == d) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private int add(TransactionDelegate d) {
+		final int i = participantCount++;
+
+		if (i == delegates.length) {
+			final int newCapacity = i * 2;
+			delegates = Arrays.copyOf(delegates, newCapacity);
+			handlers = Arrays.copyOf(handlers, newCapacity);
+			states = Arrays.copyOf(states, newCapacity);
+		}
+
+		delegates[i] = d;
+
+		if (index != null) {
+			index.put(d, i);
+		} else if (i == HASH_THRESHOLD) {
+			index = new Reference2IntOpenHashMap<>();
+			index.defaultReturnValue(-1);
+
+			for (int j = 0; j <= i; ++j) {
+				index.put(delegates[j], j);
+			}
+		}
+
+		return i;
+	}
+
 	private Consumer<TransactionContext> defaultRollback(Consumer<TransactionContext> consumer) {
 		return consumer;
 	}
 
 	///// STATIC MEMBERS FOLLOW /////
 
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** Participant count at which lookup switches from linear scan to an identity hash index. */
+	private static final int HASH_THRESHOLD = 8;
+
 	public static void setServerThread(MinecraftServer server) {
 		serverThread = Thread.currentThread();
 	}
 
-	private static Thread serverThread;
+	private static volatile Thread serverThread;
+
+	/**
+	 * One lock per enlisted delegate, held by the thread whose transaction enlisted it until
+	 * that thread's root transaction closes. Weak keys so that unloaded stores can be collected.
+	 */
+	private static final ConcurrentMap<TransactionDelegate, ReentrantLock> LOCKS = new MapMaker().weakKeys().makeMap();
 
-	/** Held by thread of active transaction, regardless of thread */
-	static final ReentrantLock innerLock = new ReentrantLock();
+	private static final ThreadLocal<TransactionStack> STACKS = ThreadLocal.withInitial(TransactionStack::new);
 
 	/**
-	 * Must be held if thread is not the server thread - ensures non-server threads
-	 * contend with each other before contending with server thread itself.
+	 * Open transactions and participant locks for a single thread. Only ever accessed by that thread.
 	 */
-	static final ReentrantLock outerLock = new ReentrantLock();
+	private static final class TransactionStack {
+		private final Thread thread = Thread.currentThread();
+		private final ArrayList<TransactionImpl> transactions = new ArrayList<>();
+		private final ArrayList<ReentrantLock> heldLocks = new ArrayList<>();
+		private int pointer = -1;
+
+		private TransactionImpl current() {
+			return pointer == -1 ? null : transactions.get(pointer);
+		}
 
-	private static final ArrayList<TransactionImpl> STACK = new ArrayList<>();
-	private static int stackPointer = -1;
+		private TransactionImpl push() {
+			final TransactionImpl result;
 
-	public static TransactionImpl open() {
-		// non-server threads must take turns
-		if (Thread.currentThread() != serverThread) {
-			outerLock.lock();
+			if (transactions.size() > ++pointer) {
+				result = transactions.get(pointer);
+				result.isOpen = true;
+			} else {
+				assert transactions.size() == pointer;
+				result = new TransactionImpl(this);
+				transactions.add(result);
+			}
+
+			return result;
+		}
+
+		private void lock(TransactionDelegate delegate) {
+			if (delegate == TransactionDelegate.IGNORE) {
+				return;
+			}
+
+			final ReentrantLock lock = LOCKS.computeIfAbsent(delegate, d -> new ReentrantLock());
+
+			if (lock.isHeldByCurrentThread()) {
+				return;
+			}
+
+			if (!lock.tryLock()) {
+				if (TransactionMetricsImpl.enabled) {
+					final long start = System.nanoTime();
+
+					try {
+						awaitLock(lock);
+					} finally {
+						TransactionMetricsImpl.INSTANCE.onLockWait(System.nanoTime() - start);
+					}
+				} else {
+					awaitLock(lock);
+				}
+			}
+
+			heldLocks.add(lock);
 		}
 
-		innerLock.lock();
+		/**
+		 * The server thread waits as long as needed. Other threads give up after a timeout so that
+		 * lock-order cycles between threads resolve by rolling back the non-server transaction
+		 * instead of stalling the server.
+		 */
+		private void awaitLock(ReentrantLock lock) {
+			if (thread == serverThread) {
+				lock.lock();
+			} else {
+				try {
+					if (!lock.tryLock(FluidityConfig.TRANSACTION_LOCK_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+						throw new ConcurrentModificationException("Timed out waiting for transaction participant held by another thread");
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ConcurrentModificationException("Interrupted while waiting for transaction participant held by another thread");
+				}
+			}
+		}
 
-		final TransactionImpl result;
+		private void unlockAll() {
+			final int limit = heldLocks.size();
+
+			for (int i = 0; i < limit; ++i) {
+				heldLocks.get(i).unlock();
+			}
 
-		if (STACK.size() > ++stackPointer) {
-			result = STACK.get(stackPointer);
-			result.isOpen = true;
-		} else {
-			assert STACK.size() == stackPointer;
-			result = new TransactionImpl();
-			STACK.add(result);
+			heldLocks.clear();
+		}
+	}
+
+	public static TransactionImpl open() {
+		final TransactionStack stack = STACKS.get();
+		final TransactionImpl result = stack.push();
+
+		if (TransactionMetricsImpl.enabled) {
+			TransactionMetricsImpl.INSTANCE.onOpen(stack.pointer + 1);
 		}
 
 		return result;
 	}
 
 	public static TransactionImpl current() {
-		return stackPointer == -1 ? null : STACK.get(stackPointer);
+		return STACKS.get().current();
+	}
+
+	/** Number of transactions open on the calling thread. */
+	static int depth() {
+		return STACKS.get().pointer + 1;
 	}
 }
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+import grondag.fluidity.Fluidity;
+import grondag.fluidity.api.transact.TransactionMetrics;
+
+@Internal
+public final class TransactionMetricsImpl implements TransactionMetrics {
+	public static final int DEFAULT_RETAINED_TICKS = 1200;
+
+	public static final TransactionMetricsImpl INSTANCE = new TransactionMetricsImpl();
+
+	// read on every transaction open/close, so kept as a static field
+	static volatile boolean enabled = false;
+
+	private RingBufferSink defaultSink = new RingBufferSink(DEFAULT_RETAINED_TICKS);
+	private volatile Sink sink = defaultSink;
+	private long tick = 0;
+
+	// updated from any thread that runs transactions
+	private final LongAdder opened = new LongAdder();
+	private final LongAdder committed = new LongAdder();
+	private final LongAdder rolledBack = new LongAdder();
+	private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+	private final LongAdder participants = new LongAdder();
+	private final LongAccumulator maxParticipants = new LongAccumulator(Math::max, 0);
+	private final LongAdder lockWaits = new LongAdder();
+	private final LongAdder lockWaitNanos = new LongAdder();
+	private final LongAccumulator maxLockWaitNanos = new LongAccumulator(Math::max, 0);
+	private final LongAdder commitHandlerNanos = new LongAdder();
+	private final LongAdder rollbackHandlerNanos = new LongAdder();
+	private final ConcurrentHashMap<Class<?>, LongAdder> enlistments = new ConcurrentHashMap<>();
+
+	private TransactionMetricsImpl() {}
+
+	/**
+	 * Applies configured settings. Kept out of the constructor so that transactions
+	 * don't depend on the config (and thus the loader) being available.
+	 *
+	 * @param enabled initial enabled state
+	 * @param retainedTicks number of samples retained by the default sink
+	 */
+	public void configure(boolean enabled, int retainedTicks) {
+		final boolean isDefault = sink == defaultSink;
+		defaultSink = new RingBufferSink(retainedTicks);
+
+		if (isDefault) {
+			sink = defaultSink;
+		}
+
+		TransactionMetricsImpl.enabled = enabled;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		TransactionMetricsImpl.enabled = enabled;
+	}
+
+	@Override
+	public void setSink(Sink sink) {
+		this.sink = sink == null ? defaultSink : sink;
+	}
+
+	@Override
+	public Sink getSink() {
+		return sink;
+	}
+
+	@Override
+	public void dump(File file) throws IOException {
+		sink.dump(file);
+	}
+
+	void onOpen(int depth) {
+		opened.increment();
+		maxDepth.accumulate(depth);
+	}
+
+	void onEnlist(Object delegate) {
+		enlistments.computeIfAbsent(delegate.getClass(), c -> new LongAdder()).increment();
+	}
+
+	void onClose(boolean isCommited, int participantCount, long handlerNanos) {
+		if (isCommited) {
+			committed.increment();
+			commitHandlerNanos.add(handlerNanos);
+		} else {
+			rolledBack.increment();
+			rollbackHandlerNanos.add(handlerNanos);
+		}
+
+		participants.add(participantCount);
+		maxParticipants.accumulate(participantCount);
+	}
+
+	void onLockWait(long nanos) {
+		lockWaits.increment();
+		lockWaitNanos.add(nanos);
+		maxLockWaitNanos.accumulate(nanos);
+	}
+
+	/**
+	 * Called on the server thread at the end of each tick. Counters updated by other threads
+	 * concurrently with this call may land in either tick.
+	 */
+	public void onTick() {
+		++tick;
+
+		if (!enabled) {
+			return;
+		}
+
+		final Map<String, Long> byClass;
+
+		if (enlistments.isEmpty()) {
+			byClass = Collections.emptyMap();
+		} else {
+			final ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+
+			enlistments.forEach((c, n) -> {
+				final long count = n.sumThenReset();
+
+				if (count != 0) {
+					builder.put(c.getName(), count);
+				}
+			});
+
+			byClass = builder.build();
+		}
+
+		final Sample sample = new Sample(tick, opened.sumThenReset(), committed.sumThenReset(), rolledBack.sumThenReset(),
+				(int) maxDepth.getThenReset(), participants.sumThenReset(), (int) maxParticipants.getThenReset(),
+				lockWaits.sumThenReset(), lockWaitNanos.sumThenReset(), maxLockWaitNanos.getThenReset(),
+				commitHandlerNanos.sumThenReset(), rollbackHandlerNanos.sumThenReset(), byClass);
+
+		try {
+			sink.accept(sample);
+		} catch (final Exception e) {
+			Fluidity.LOG.warn("[Fluidity] Transaction metrics sink failed and has been reset to default", e);
+			sink = defaultSink;
+		}
+	}
+
+	/**
+	 * Default sink - retains the most recent samples in a fixed-size array.
+	 */
+	private static class RingBufferSink implements Sink {
+		private final Sample[] samples;
+		private int next = 0;
+		private int size = 0;
+
+		private RingBufferSink(int capacity) {
+			samples = new Sample[Math.max(1, capacity)];
+		}
+
+		@Override
+		public synchronized void accept(Sample sample) {
+			samples[next] = sample;
+			next = (next + 1) % samples.length;
+
+			if (size < samples.length) {
+				++size;
+			}
+		}
+
+		@Override
+		public void dump(File file) throws IOException {
+			final Sample[] copy;
+			final int start;
+			final int count;
+
+			synchronized (this) {
+				copy = samples.clone();
+				count = size;
+				start = (next - size + samples.length) % samples.length;
+			}
+
+			try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+				writer.println("tick,opened,committed,rolled_back,max_depth,participants,max_participants,lock_waits,lock_wait_ns,max_lock_wait_ns,commit_handler_ns,rollback_handler_ns,enlistments_by_class");
+
+				for (int i = 0; i < count; ++i) {
+					final Sample s = copy[(start + i) % copy.length];
+					final StringBuilder classes = new StringBuilder();
+
+					s.enlistmentsByClass.forEach((c, n) -> {
+						if (classes.length() > 0) {
+							classes.append(' ');
+						}
+
+						classes.append(c).append('=').append(n);
+					});
+
+					writer.println(String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,\"%s\"", s.tick, s.opened, s.committed, s.rolledBack,
+							s.maxDepth, s.participants, s.maxParticipants, s.lockWaits, s.lockWaitNanos, s.maxLockWaitNanos,
+							s.commitHandlerNanos, s.rollbackHandlerNanos, classes));
+				}
+			}
+		}
+	}
+}
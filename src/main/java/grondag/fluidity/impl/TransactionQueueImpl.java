@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.impl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+import grondag.fluidity.api.transact.Transaction;
+
+/**
+ * Work submitted from any thread to run in transactions on the server thread.
+ */
+@Internal
+public final class TransactionQueueImpl {
+	private TransactionQueueImpl() {}
+
+	private static final ConcurrentLinkedQueue<Task<?>> QUEUE = new ConcurrentLinkedQueue<>();
+
+	private static class Task<T> {
+		private final Function<Transaction, T> work;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private Task(Function<Transaction, T> work) {
+			this.work = work;
+		}
+
+		private void run() {
+			if (future.isDone()) {
+				// cancelled by caller
+				return;
+			}
+
+			if (TransactionImpl.depth() != 0) {
+				future.completeExceptionally(new IllegalStateException("Queued transaction work must start outside any open transaction"));
+				return;
+			}
+
+			T result = null;
+			Throwable failure = null;
+			final TransactionImpl tx = TransactionImpl.open();
+
+			try {
+				result = work.apply(tx);
+			} catch (final Throwable e) {
+				failure = e;
+			} finally {
+				if (TransactionImpl.depth() > 1) {
+					failure = combine(failure, new IllegalStateException("Queued transaction work left nested transactions open"));
+				}
+
+				// roll back whatever the work left open, including the root if it wasn't committed,
+				// so that the stack is empty and participant locks are released for the next task
+				TransactionImpl open = TransactionImpl.current();
+
+				while (open != null) {
+					try {
+						open.rollback();
+					} catch (final Throwable e) {
+						failure = combine(failure, e);
+					}
+
+					open = TransactionImpl.current();
+				}
+			}
+
+			if (failure == null) {
+				future.complete(result);
+			} else {
+				future.completeExceptionally(failure);
+			}
+		}
+
+		private static Throwable combine(Throwable first, Throwable next) {
+			if (first == null) {
+				return next;
+			}
+
+			first.addSuppressed(next);
+			return first;
+		}
+	}
+
+	public static <T> CompletableFuture<T> submit(Function<Transaction, T> work) {
+		Preconditions.checkNotNull(work, "Transaction work must be non-null");
+		final Task<T> task = new Task<>(work);
+		QUEUE.offer(task);
+		return task.future;
+	}
+
+	/**
+	 * Runs work submitted before this call, each in its own root transaction.
+	 * Work submitted while running waits for the next tick. Called on the server thread.
+	 * Work that leaves a nested transaction open fails, and everything it left open is rolled back.
+	 */
+	public static void tick() {
+		int limit = QUEUE.size();
+
+		while (limit-- > 0) {
+			final Task<?> task = QUEUE.poll();
+
+			if (task == null) {
+				break;
+			}
+
+			task.run();
+		}
+	}
+
+	/**
+	 * Cancels pending work when the server stops.
+	 */
+	public static void cancelAll() {
+		Task<?> task = QUEUE.poll();
+
+		while (task != null) {
+			task.future.completeExceptionally(new CancellationException("Server stopped before transaction could run"));
+			task = QUEUE.poll();
+		}
+	}
+}
@@ -15,17 +15,19 @@
  ******************************************************************************/
 package grondag.fluidity.impl.article;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.jetbrains.annotations.ApiStatus.Internal;
 
 import net.minecraft.nbt.NbtCompound;
 
-import grondag.fluidity.Fluidity;
 import grondag.fluidity.api.article.Article;
 import grondag.fluidity.api.article.ArticleType;
 
@@ -60,27 +62,27 @@ public class ArticleCache {
 		}
 	}
 
-	static class FatArticleKey {
+	static class TaggedKey {
 		private ArticleType<?> type;
 		private Object resource;
+		private NbtCompound tag;
+		private long fingerprint;
 		private int hashCode;
-		public NbtCompound tag;
 
-
-		FatArticleKey set (ArticleType<?> type, Object resource, NbtCompound tag) {
+		TaggedKey set(ArticleType<?> type, Object resource, NbtCompound tag, long fingerprint, int hashCode) {
 			this.type = type;
 			this.resource = resource;
-			this.tag = tag.copy();
-			hashCode = type.hashCode() ^ resource.hashCode() ^ tag.hashCode();
+			this.tag = tag;
+			this.fingerprint = fingerprint;
+			this.hashCode = hashCode;
 			return this;
 		}
 
-
 		@Override
 		public boolean equals(Object obj) {
-			if(obj instanceof FatArticleKey ) {
-				final FatArticleKey other = (FatArticleKey) obj;
-				return type == other.type && resource == other.resource && tag.equals(other.tag);
+			if(obj instanceof TaggedKey) {
+				final TaggedKey other = (TaggedKey) obj;
+				return type == other.type && resource == other.resource && fingerprint == other.fingerprint && tag.equals(other.tag);
 			} else {
 				return false;
 			}
@@ -92,20 +94,138 @@ public class ArticleCache {
 		}
 	}
 
+	static class TaggedRef extends WeakReference<ArticleImpl<?>> {
+		private final TaggedKey key;
+		private final int id;
+
+		TaggedRef(ArticleImpl<?> article, TaggedKey key) {
+			super(article, COLLECTED);
+			this.key = key;
+			id = article.id;
+		}
+	}
+
 	private static final ThreadLocal<ArticleKey> KEYS = ThreadLocal.withInitial(ArticleKey::new);
-	private static final ThreadLocal<FatArticleKey> FAT_KEYS = ThreadLocal.withInitial(FatArticleKey::new);
 	private static final ConcurrentHashMap<ArticleKey, ArticleImpl<?>> UNIQUES = new ConcurrentHashMap<>();
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private static final LoadingCache<FatArticleKey, ArticleImpl<?>> TAGGED = CacheBuilder
-	.newBuilder()
-	.maximumSize(0x10000)
-	.build(CacheLoader.from(k -> {
-		FAT_KEYS.set(new FatArticleKey());
-		return new ArticleImpl(k.type, k.resource, k.tag);
-	}));
+	// Ids are dense and unique among live articles. Zero is reserved for NOTHING.
+	// Untagged articles are never released. Ids of tagged articles are reused once the article is collected.
+	private static final IntArrayList FREE_IDS = new IntArrayList();
+	private static int nextId = 1;
+
+	private static int claimId() {
+		synchronized (FREE_IDS) {
+			return FREE_IDS.isEmpty() ? nextId++ : FREE_IDS.popInt();
+		}
+	}
+
+	private static void releaseId(int id) {
+		synchronized (FREE_IDS) {
+			FREE_IDS.push(id);
+		}
+	}
+
+	/**
+	 * Canonical instance of every tagged article that is still referenced, so that equal
+	 * articles always share an id even after eviction from {@link #TAGGED}. Guarded by itself.
+	 */
+	private static final HashMap<TaggedKey, TaggedRef> LIVE_TAGGED = new HashMap<>();
+	private static final ReferenceQueue<ArticleImpl<?>> COLLECTED = new ReferenceQueue<>();
+	private static final TaggedKey PROBE = new TaggedKey();
+
+	public static int liveTaggedCount() {
+		synchronized (LIVE_TAGGED) {
+			return LIVE_TAGGED.size();
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ArticleImpl<?> findOrCreateTagged(ArticleType type, Object resource, NbtCompound tag, long fingerprint, int hashCode) {
+		synchronized (LIVE_TAGGED) {
+			TaggedRef collected = (TaggedRef) COLLECTED.poll();
+
+			while (collected != null) {
+				if (LIVE_TAGGED.get(collected.key) == collected) {
+					LIVE_TAGGED.remove(collected.key);
+				}
+
+				releaseId(collected.id);
+				collected = (TaggedRef) COLLECTED.poll();
+			}
+
+			final TaggedRef ref = LIVE_TAGGED.get(PROBE.set(type, resource, tag, fingerprint, hashCode));
+			// don't retain caller's tag
+			PROBE.tag = null;
+			ArticleImpl<?> result = ref == null ? null : ref.get();
 
-	private static boolean warnOnTaggedFailure = true;
+			if (result == null) {
+				final NbtCompound tagCopy = tag.copy();
+				result = new ArticleImpl(type, resource, tagCopy, claimId());
+				final TaggedKey key = new TaggedKey().set(type, resource, tagCopy, fingerprint, hashCode);
+				LIVE_TAGGED.put(key, new TaggedRef(result, key));
+			}
+
+			return result;
+		}
+	}
+
+	private static final int TAGGED_CAPACITY = 0x10000;
+	private static final int TAGGED_MASK = TAGGED_CAPACITY - 1;
+
+	/**
+	 * Bounded, lock-free cache of tagged articles. Two-way set associative: each article
+	 * can occupy one of two adjacent slots, and a miss in a full set evicts the older entry.
+	 * Holds strong references, so entries stay canonical while cached. Races can lose entries but
+	 * cannot create duplicates because misses resolve through {@link #LIVE_TAGGED}.
+	 */
+	private static final AtomicReferenceArray<ArticleImpl<?>> TAGGED = new AtomicReferenceArray<>(TAGGED_CAPACITY);
+	private static final LongAdder TAGGED_HITS = new LongAdder();
+	private static final LongAdder TAGGED_MISSES = new LongAdder();
+	private static final LongAdder TAGGED_EVICTIONS = new LongAdder();
+
+	public static long taggedHitCount() {
+		return TAGGED_HITS.sum();
+	}
+
+	public static long taggedMissCount() {
+		return TAGGED_MISSES.sum();
+	}
+
+	public static long taggedEvictionCount() {
+		return TAGGED_EVICTIONS.sum();
+	}
+
+	/**
+	 * Probes with the caller's tag and copies it only when a new article is created.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static ArticleImpl<?> getTagged(ArticleType type, Object resource, NbtCompound tag) {
+		// one walk of the tag - hits then only need a deep comparison when fingerprints match
+		final long fingerprint = TagFingerprint.of(tag);
+		final int hashCode = ArticleImpl.hashCode(resource, fingerprint);
+		final int index = HashCommon.mix(hashCode ^ type.hashCode()) & TAGGED_MASK & ~1;
+
+		for (int i = index; i <= index + 1; ++i) {
+			final ArticleImpl<?> a = TAGGED.get(i);
+
+			if (a != null && a.tagFingerprint == fingerprint && a.resource == resource && a.type == type && tag.equals(a.tag)) {
+				TAGGED_HITS.increment();
+				return a;
+			}
+		}
+
+		TAGGED_MISSES.increment();
+		final ArticleImpl<?> result = findOrCreateTagged(type, resource, tag, fingerprint, hashCode);
+
+		if (!TAGGED.compareAndSet(index, null, result) && !TAGGED.compareAndSet(index + 1, null, result)) {
+			// newest entry goes first, prior first entry replaces the second
+			if (TAGGED.getAndSet(index + 1, TAGGED.getAndSet(index, result)) != null) {
+				TAGGED_EVICTIONS.increment();
+			}
+		}
+
+		return result;
+	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	static Article getArticle(ArticleType type, Object resource, NbtCompound tag) {
@@ -117,20 +237,10 @@ public class ArticleCache {
 			final ArticleKey key = KEYS.get().set(type, resource);
 			return UNIQUES.computeIfAbsent(key, k -> {
 				KEYS.set(new ArticleKey());
-				return new ArticleImpl(k.type, k.resource, null);
+				return new ArticleImpl(k.type, k.resource, null, claimId());
 			});
 		} else {
-			final FatArticleKey key = FAT_KEYS.get().set(type, resource, tag);
-			try {
-				return TAGGED.get(key);
-			} catch (final ExecutionException e) {
-				if(warnOnTaggedFailure) {
-					Fluidity.LOG.warn("Cache load failure for tagged article.  Subsequent warnings are suppressed.", e);
-					warnOnTaggedFailure = false;
-				}
-
-				return new ArticleImpl(type, resource, tag);
-			}
+			return getTagged(type, resource, tag);
 		}
 	}
 }
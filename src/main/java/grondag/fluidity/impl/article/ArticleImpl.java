@@ -15,6 +15,10 @@
  ******************************************************************************/
 package grondag.fluidity.impl.article;
 
+import java.lang.ref.SoftReference;
+
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.HashCommon;
 import org.jetbrains.annotations.ApiStatus.Internal;
 import org.jetbrains.annotations.Nullable;
 
@@ -36,20 +40,25 @@ public class ArticleImpl<T> implements Article {
 	final T resource;
 	final NbtCompound tag;
 	final int hashCode;
+	// equal tags always have equal fingerprints, so a mismatch avoids a deep tag comparison
+	final long tagFingerprint;
+	final int id;
 	String translationKey;
 
-	ArticleImpl(ArticleType<T> type, T resource, @Nullable NbtCompound tag) {
+	// Encoded forms are built on first use. Tagged articles can be numerous and their tags large,
+	// so their encoded forms are softly held and rebuilt if collected. Only the tag is cached
+	// in packet form because type and resource are written as raw registry ids, which can be remapped.
+	private volatile SoftReference<byte[]> softTagPacketBytes;
+	private volatile NbtCompound tagTemplate;
+	private volatile SoftReference<NbtCompound> softTagTemplate;
+
+	ArticleImpl(ArticleType<T> type, T resource, @Nullable NbtCompound tag, int id) {
 		this.type = (ArticleTypeImpl<T>) type;
 		this.resource = resource;
 		this.tag = tag;
-
-		int hashCode = resource == null ? 0 : resource.hashCode();
-
-		if(tag != null) {
-			hashCode += tag.hashCode();
-		}
-
-		this.hashCode = hashCode;
+		this.id = id;
+		tagFingerprint = TagFingerprint.of(tag);
+		hashCode = hashCode(resource, tagFingerprint);
 	}
 
 	@Override
@@ -85,7 +94,7 @@ public class ArticleImpl<T> implements Article {
 			return true;
 		} else if(obj instanceof ArticleImpl) {
 			final ArticleImpl<?> other = (ArticleImpl<?>) obj;
-			return other.resource == resource && other.type == type && doesTagMatch(other.tag);
+			return other.resource == resource && other.type == type && other.tagFingerprint == tagFingerprint && doesTagMatch(other.tag);
 		} else {
 			return false;
 		}
@@ -96,16 +105,42 @@ public class ArticleImpl<T> implements Article {
 		return hashCode;
 	}
 
-	public static final ArticleImpl<Void> NOTHING = new ArticleImpl<>(ArticleType.NOTHING, null, null);
+	static int hashCode(@Nullable Object resource, long tagFingerprint) {
+		return (resource == null ? 0 : resource.hashCode()) + HashCommon.long2int(tagFingerprint);
+	}
+
+	@Override
+	public final int id() {
+		return id;
+	}
+
+	public static final ArticleImpl<Void> NOTHING = new ArticleImpl<>(ArticleType.NOTHING, null, null, 0);
 
+	/**
+	 * Returns a copy of a cached template because callers own the result and may modify it.
+	 * Built-in types write type and resource as immutable strings, so untagged copies are cheap.
+	 */
 	@Override
 	public NbtElement toTag() {
-		final NbtCompound result = new NbtCompound();
-		result.put("type", type.toTag());
-		result.put("res",type.tagWriter.apply(resource));
-		if(this.tag != null) {
-			result.put("tag", tag.copy());
+		return tagTemplate().copy();
+	}
+
+	private NbtCompound tagTemplate() {
+		NbtCompound result = tag == null ? tagTemplate : dereference(softTagTemplate);
+
+		if (result == null) {
+			result = new NbtCompound();
+			result.put("type", type.toTag());
+			result.put("res",type.tagWriter.apply(resource));
+
+			if(tag != null) {
+				result.put("tag", tag.copy());
+				softTagTemplate = new SoftReference<>(result);
+			} else {
+				tagTemplate = result;
+			}
 		}
+
 		return result;
 	}
 
@@ -113,7 +148,31 @@ public class ArticleImpl<T> implements Article {
 	public void toPacket(PacketByteBuf buf) {
 		type.toPacket(buf);
 		type.packetWriter.accept(resource, buf);
-		buf.writeNbt(tag);
+
+		if (tag == null) {
+			buf.writeNbt(null);
+		} else {
+			buf.writeBytes(tagPacketBytes());
+		}
+	}
+
+	private byte[] tagPacketBytes() {
+		byte[] result = dereference(softTagPacketBytes);
+
+		if (result == null) {
+			final PacketByteBuf encoded = new PacketByteBuf(Unpooled.buffer());
+			encoded.writeNbt(tag);
+			result = new byte[encoded.readableBytes()];
+			encoded.readBytes(result);
+			encoded.release();
+			softTagPacketBytes = new SoftReference<>(result);
+		}
+
+		return result;
+	}
+
+	private static <V> V dereference(@Nullable SoftReference<V> ref) {
+		return ref == null ? null : ref.get();
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.impl.article;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.nbt.AbstractNbtNumber;
+import net.minecraft.nbt.NbtByteArray;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtDouble;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtFloat;
+import net.minecraft.nbt.NbtIntArray;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLongArray;
+import net.minecraft.nbt.NbtString;
+
+/**
+ * 64-bit structural hash of NBT content. Tags that are equal always have the same fingerprint,
+ * so different fingerprints prove tags are different without a deep comparison.
+ * Compound entries are combined without regard to order, matching compound equality.
+ */
+@Internal
+public final class TagFingerprint {
+	private TagFingerprint() {}
+
+	/** Fingerprint of a missing tag. */
+	public static final long NONE = 0;
+
+	public static long of(@Nullable NbtCompound tag) {
+		return tag == null ? NONE : of((NbtElement) tag);
+	}
+
+	private static long of(NbtElement element) {
+		final long seed = element.getType() * SEED;
+
+		if (element instanceof NbtCompound) {
+			final NbtCompound compound = (NbtCompound) element;
+			long h = 0;
+
+			for (final String key : compound.getKeys()) {
+				// sum is order-independent, mix keeps entries from cancelling
+				h += HashCommon.mix(step(of(key), of(compound.get(key))));
+			}
+
+			return HashCommon.mix(seed ^ h);
+		} else if (element instanceof NbtList) {
+			final NbtList list = (NbtList) element;
+			final int limit = list.size();
+			long h = seed;
+
+			for (int i = 0; i < limit; ++i) {
+				h = step(h, of(list.get(i)));
+			}
+
+			return HashCommon.mix(h ^ limit);
+		} else if (element instanceof NbtString) {
+			return HashCommon.mix(seed ^ of(element.asString()));
+		} else if (element instanceof NbtFloat) {
+			final float f = ((NbtFloat) element).floatValue();
+			// equality is by value, so both zeros must match
+			return HashCommon.mix(seed ^ (f == 0 ? 0 : Float.floatToIntBits(f)));
+		} else if (element instanceof NbtDouble) {
+			final double d = ((NbtDouble) element).doubleValue();
+			return HashCommon.mix(seed ^ (d == 0 ? 0 : Double.doubleToLongBits(d)));
+		} else if (element instanceof AbstractNbtNumber) {
+			return HashCommon.mix(seed ^ ((AbstractNbtNumber) element).longValue());
+		} else if (element instanceof NbtByteArray) {
+			final byte[] data = ((NbtByteArray) element).getByteArray();
+			long h = seed;
+
+			for (final byte b : data) {
+				h = step(h, b);
+			}
+
+			return HashCommon.mix(h ^ data.length);
+		} else if (element instanceof NbtIntArray) {
+			final int[] data = ((NbtIntArray) element).getIntArray();
+			long h = seed;
+
+			for (final int v : data) {
+				h = step(h, v);
+			}
+
+			return HashCommon.mix(h ^ data.length);
+		} else if (element instanceof NbtLongArray) {
+			final long[] data = ((NbtLongArray) element).getLongArray();
+			long h = seed;
+
+			for (final long v : data) {
+				h = step(h, v);
+			}
+
+			return HashCommon.mix(h ^ data.length);
+		} else {
+			// unknown element types fall back to their own hash, which is consistent with equals
+			return HashCommon.mix(seed ^ element.hashCode());
+		}
+	}
+
+	private static long of(String s) {
+		final int limit = s.length();
+		long h = limit;
+
+		for (int i = 0; i < limit; ++i) {
+			h = step(h, s.charAt(i));
+		}
+
+		return HashCommon.mix(h);
+	}
+
+	/** Order-dependent combination. */
+	private static long step(long h, long value) {
+		return (h ^ value) * MULTIPLIER + SEED;
+	}
+
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+	private static final long MULTIPLIER = 0xBF58476D1CE4E5B9L;
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright 2019, 2020 grondag
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package grondag.fluidity.impl.storage;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.article.StoredArticleView;
+import grondag.fluidity.api.fraction.Fraction;
+import grondag.fluidity.api.fraction.MutableFraction;
+import grondag.fluidity.api.storage.Store;
+import grondag.fluidity.api.storage.StoreSnapshot;
+
+/**
+ * Snapshot content is held in parallel arrays indexed by handle. Empty handles have a null amount.
+ * Totals for each article are indexed by article id when the snapshot is created. Ids can't be
+ * reused while the snapshot holds the article. All fields are final and assigned before the
+ * snapshot is published, so instances are safe to share between threads.
+ */
+@Internal
+public final class StoreSnapshotImpl implements StoreSnapshot {
+	private final long version;
+	private final Article[] articles;
+	private final long[] counts;
+	private final Fraction[] amounts;
+	private final long count;
+	private final Fraction amount;
+	private final long capacity;
+	private final Fraction volume;
+	private final View[] views;
+	// article id to total count and amount across handles
+	private final Int2LongOpenHashMap countIndex = new Int2LongOpenHashMap();
+	private final Int2ObjectOpenHashMap<Fraction> amountIndex = new Int2ObjectOpenHashMap<>();
+
+	private StoreSnapshotImpl(long version, Article[] articles, long[] counts, Fraction[] amounts, long count, Fraction amount, long capacity, Fraction volume) {
+		this.version = version;
+		this.articles = articles;
+		this.counts = counts;
+		this.amounts = amounts;
+		this.count = count;
+		this.amount = amount;
+		this.capacity = capacity;
+		this.volume = volume;
+
+		final int limit = articles.length;
+		final View[] views = new View[limit];
+
+		for (int i = 0; i < limit; ++i) {
+			final Fraction a = amounts[i];
+
+			if (a != null) {
+				views[i] = new View(i);
+				final int id = articles[i].id();
+				countIndex.addTo(id, counts[i]);
+
+				// most stores hold each article at a single handle, so only combine when needed
+				final Fraction prior = amountIndex.get(id);
+				amountIndex.put(id, prior == null ? a : new MutableFraction(prior).add(a).toImmutable());
+			}
+		}
+
+		this.views = views;
+	}
+
+	public static StoreSnapshot of(Store store, long version) {
+		final int limit = store.handleCount();
+		final Article[] articles = new Article[limit];
+		final long[] counts = new long[limit];
+		final Fraction[] amounts = new Fraction[limit];
+
+		for (int i = 0; i < limit; ++i) {
+			final StoredArticleView view = store.view(i);
+
+			if (view.isEmpty()) {
+				articles[i] = Article.NOTHING;
+			} else {
+				articles[i] = view.article();
+				counts[i] = view.count();
+				// stored views may expose their internal mutable amount
+				amounts[i] = view.amount().toImmutable();
+			}
+		}
+
+		return new StoreSnapshotImpl(version, articles, counts, amounts, store.count(), store.amount().toImmutable(),
+				store.capacity(), store.volume().toImmutable());
+	}
+
+	public static final StoreSnapshot EMPTY = new StoreSnapshotImpl(UNVERSIONED, new Article[0], new long[0], new Fraction[0], 0, Fraction.ZERO, 0, Fraction.ZERO);
+
+	@Override
+	public long version() {
+		return version;
+	}
+
+	@Override
+	public int handleCount() {
+		return articles.length;
+	}
+
+	@Override
+	public StoredArticleView view(int handle) {
+		if (handle < 0 || handle >= views.length) {
+			return StoredArticleView.EMPTY;
+		}
+
+		final View result = views[handle];
+		return result == null ? StoredArticleView.EMPTY : result;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return count == 0 && amount.isZero();
+	}
+
+	@Override
+	public long count() {
+		return count;
+	}
+
+	@Override
+	public Fraction amount() {
+		return amount;
+	}
+
+	@Override
+	public long capacity() {
+		return capacity;
+	}
+
+	@Override
+	public Fraction volume() {
+		return volume;
+	}
+
+	@Override
+	public long countOf(Article item) {
+		return countIndex.get(item.id());
+	}
+
+	@Override
+	public Fraction amountOf(Article item) {
+		final Fraction result = amountIndex.get(item.id());
+		return result == null ? Fraction.ZERO : result;
+	}
+
+	private class View implements StoredArticleView {
+		private final int handle;
+
+		private View(int handle) {
+			this.handle = handle;
+		}
+
+		@Override
+		public Article article() {
+			return articles[handle];
+		}
+
+		@Override
+		public int handle() {
+			return handle;
+		}
+
+		@Override
+		public long count() {
+			return counts[handle];
+		}
+
+		@Override
+		public Fraction amount() {
+			return amounts[handle];
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package grondag.fluidity.test;
+
+import java.lang.reflect.Field;
+
+import io.netty.buffer.Unpooled;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import sun.misc.Unsafe;
+
+import net.minecraft.item.Items;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.network.ServerPlayNetworkHandler;
+import net.minecraft.util.Identifier;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.base.synch.ArticleDictionary;
+
+class ArticleDictionaryTest {
+	@BeforeAll
+	static void setup() {
+		TestBootstrap.init();
+	}
+
+	private static Article article(int i) {
+		final NbtCompound tag = new NbtCompound();
+		tag.putInt("i", i);
+		return Article.of(Items.STONE, tag);
+	}
+
+	@Test
+	void roundTrip() {
+		final ArticleDictionary writer = new ArticleDictionary();
+		final ArticleDictionary reader = new ArticleDictionary();
+		final PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+		final ObjectArrayList<Article> sent = new ObjectArrayList<>();
+
+		// fills the dictionary, with references to entries already sent
+		for (int i = 0; i < ArticleDictionary.MAX_SIZE; i++) {
+			sent.add(article(i));
+
+			if ((i & 7) == 0) {
+				sent.add(article(i / 2));
+			}
+		}
+
+		// first new article past the limit resets both sides, after which old articles are sent again
+		sent.add(article(ArticleDictionary.MAX_SIZE));
+		sent.add(article(0));
+		sent.add(article(ArticleDictionary.MAX_SIZE));
+		sent.add(Article.of(Items.DIRT));
+
+		for (final Article a : sent) {
+			writer.write(buf, a);
+		}
+
+		assert writer.size() == 3;
+
+		for (final Article a : sent) {
+			assert reader.read(buf).equals(a);
+		}
+
+		assert reader.size() == 3;
+		assert buf.readableBytes() == 0;
+
+		// references after the reset are short
+		writer.write(buf, article(0));
+		assert buf.readableBytes() == 1;
+	}
+
+	@Test
+	void disconnect() throws ReflectiveOperationException {
+		// dictionaries only use the handler as a key, so it doesn't need to be initialized
+		final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+		field.setAccessible(true);
+		final ServerPlayNetworkHandler handler = (ServerPlayNetworkHandler) ((Unsafe) field.get(null)).allocateInstance(ServerPlayNetworkHandler.class);
+		final Identifier channel = new Identifier("fluidity", "test");
+
+		final ArticleDictionary dictionary = ArticleDictionary.forConnection(handler, channel);
+		assert ArticleDictionary.forConnection(handler, channel) == dictionary;
+		assert ArticleDictionary.forConnection(handler, new Identifier("fluidity", "other")) != dictionary;
+
+		ArticleDictionary.onDisconnect(handler);
+		assert ArticleDictionary.forConnection(handler, channel) != dictionary;
+		ArticleDictionary.onDisconnect(handler);
+	}
+}
@@ -0,0 +1,52 @@
+package grondag.fluidity.test;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.fluid.Fluids;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.fraction.Fraction;
+import grondag.fluidity.base.storage.bulk.AggregateBulkStore;
+import grondag.fluidity.base.storage.bulk.FixedResolutionTank;
+
+class BulkStoreTest {
+	@BeforeAll
+	static void setup() {
+		TestBootstrap.init();
+	}
+
+	@Test
+	void fixedTankMaxRequest() {
+		final Article water = Article.of(Fluids.WATER);
+		final FixedResolutionTank tank = new FixedResolutionTank(1000, 4000);
+
+		assert tank.getConsumer().query(water, Fraction.MAX_VALUE).equals(Fraction.of(4));
+		assert tank.getConsumer().apply(water, Fraction.of(2), false).equals(Fraction.of(2));
+
+		// requests whose units don't fit in a long are clamped
+		assert tank.amountOf(water).equals(Fraction.of(2));
+		assert tank.getSupplier().query(water, Fraction.MAX_VALUE).equals(Fraction.of(2));
+		assert tank.getSupplier().apply(water, Fraction.MAX_VALUE, false).equals(Fraction.of(2));
+		assert tank.isEmpty();
+	}
+
+	@Test
+	void fixedAggregateMaxRequest() {
+		final Article water = Article.of(Fluids.WATER);
+		final FixedResolutionTank a = new FixedResolutionTank(1000, 4000);
+		final FixedResolutionTank b = new FixedResolutionTank(1000, 4000);
+		final AggregateBulkStore aggregate = new AggregateBulkStore().fixedResolution(1000);
+		aggregate.addStore(a);
+		aggregate.addStore(b);
+
+		assert aggregate.getConsumer().apply(water, Fraction.of(6), false).equals(Fraction.of(6));
+		assert aggregate.amountOf(water).equals(Fraction.of(6));
+		assert a.amountOf(water).withAddition(b.amountOf(water)).equals(Fraction.of(6));
+
+		// each member is checked with amountOf as it is drained
+		assert aggregate.getSupplier().apply(water, Fraction.MAX_VALUE, false).equals(Fraction.of(6));
+		assert aggregate.isEmpty();
+		assert a.isEmpty() && b.isEmpty();
+	}
+}
@@ -0,0 +1,163 @@
+package grondag.fluidity.test;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.storage.Store;
+import grondag.fluidity.api.transact.Transaction;
+import grondag.fluidity.base.article.StoredDiscreteArticle;
+import grondag.fluidity.base.storage.discrete.DiscreteStorageListener;
+import grondag.fluidity.base.storage.discrete.FlexibleDiscreteStore;
+import grondag.fluidity.base.storage.discrete.SlottedInventoryStore;
+import grondag.fluidity.base.storage.helper.RecyclingArticleManager;
+
+class DiscreteStoreTest {
+	@BeforeAll
+	static void setup() {
+		TestBootstrap.init();
+	}
+
+	@Test
+	void noOpSetStack() throws InterruptedException {
+		final int[] prepared = new int[1];
+
+		final SlottedInventoryStore store = new SlottedInventoryStore(4) {
+			@Override
+			protected Object createRollbackState() {
+				++prepared[0];
+				return super.createRollbackState();
+			}
+		};
+
+		store.setStack(0, new ItemStack(Items.STONE, 4));
+
+		try (Transaction tx = Transaction.open()) {
+			store.setStack(0, new ItemStack(Items.STONE, 4));
+			assert prepared[0] == 0;
+
+			// store isn't locked by this transaction, so another thread can change it without waiting
+			final Thread other = new Thread(() -> {
+				try (Transaction otherTx = Transaction.open()) {
+					store.setStack(0, new ItemStack(Items.STONE, 2));
+					otherTx.commit();
+				}
+			});
+
+			other.start();
+			other.join();
+			assert prepared[0] == 1;
+
+			tx.rollback();
+		}
+
+		// nothing was logged for the no-op, so rollback doesn't restore the earlier stack
+		assert store.getStack(0).getCount() == 2;
+		assert store.count() == 2;
+	}
+
+	@Test
+	void recyclingReuse() {
+		final Article stone = Article.of(Items.STONE);
+		final Article dirt = Article.of(Items.DIRT);
+		final RecyclingArticleManager<StoredDiscreteArticle> articles = new RecyclingArticleManager<>(4, StoredDiscreteArticle::new);
+
+		final StoredDiscreteArticle a = articles.findOrCreateArticle(stone);
+		a.addToCount(5);
+		final StoredDiscreteArticle b = articles.findOrCreateArticle(dirt);
+		b.addToCount(3);
+
+		assert a.handle() == 0 && b.handle() == 1;
+		assert articles.handleCount() == 2;
+		// allocated but never assigned
+		assert articles.get(2) == null;
+
+		// non-empty articles keep their handles
+		articles.release(b);
+		assert articles.get(dirt) == b;
+
+		a.addToCount(-5);
+		articles.release(a);
+		assert articles.get(stone) == null;
+		assert a.article().isNothing();
+
+		final StoredDiscreteArticle c = articles.findOrCreateArticle(Article.of(Items.SAND));
+		assert c == a && c.handle() == 0;
+		assert articles.handleCount() == 2;
+	}
+
+	@Test
+	void recyclingClear() {
+		final Article stone = Article.of(Items.STONE);
+		final RecyclingArticleManager<StoredDiscreteArticle> articles = new RecyclingArticleManager<>(4, StoredDiscreteArticle::new);
+
+		final StoredDiscreteArticle a = articles.findOrCreateArticle(stone);
+		a.addToCount(5);
+		final StoredDiscreteArticle b = articles.findOrCreateArticle(Article.of(Items.DIRT));
+		b.addToCount(3);
+
+		articles.clear();
+		assert articles.handleCount() == 0;
+		assert articles.get(0) == null;
+		assert articles.get(stone) == null;
+		assert a.article().isNothing() && a.isEmpty();
+		assert b.article().isNothing() && b.isEmpty();
+
+		// reused handles start empty
+		final StoredDiscreteArticle c = articles.findOrCreateArticle(stone);
+		assert c.handle() == 0;
+		assert c.count() == 0;
+	}
+
+	@Test
+	void deferredNetting() {
+		final Article stone = Article.of(Items.STONE);
+		final Article dirt = Article.of(Items.DIRT);
+		final ObjectArrayList<String> events = new ObjectArrayList<>();
+		final FlexibleDiscreteStore store = new FlexibleDiscreteStore(4, 100).deferNotifications(true);
+
+		store.eventStream().startListening(new DiscreteStorageListener() {
+			@Override
+			public void disconnect(Store storage, boolean didNotify, boolean isValid) {
+				// NOOP
+			}
+
+			@Override
+			public void onAccept(Store storage, int handle, Article item, long delta, long newCount) {
+				events.add("accept " + handle + " " + item.toString() + " " + delta + " " + newCount);
+			}
+
+			@Override
+			public void onSupply(Store storage, int handle, Article item, long delta, long newCount) {
+				events.add("supply " + handle + " " + item.toString() + " " + delta + " " + newCount);
+			}
+
+			@Override
+			public void onCapacityChange(Store storage, long capacityDelta) {
+				// NOOP
+			}
+		}, false);
+
+		try (Transaction tx = Transaction.open()) {
+			// emptied handle 0 is reused for a different article
+			store.getConsumer().apply(stone, 5, false);
+			store.getSupplier().apply(stone, 5, false);
+			store.getConsumer().apply(dirt, 3, false);
+
+			// nets to zero at handle 1
+			store.getConsumer().apply(stone, 2, false);
+			store.getSupplier().apply(stone, 2, false);
+
+			assert events.isEmpty();
+			tx.commit();
+		}
+
+		// stone events at handle 0 net to zero and are not merged into the dirt event
+		assert events.size() == 1;
+		assert events.get(0).equals("accept 0 " + dirt.toString() + " 3 3");
+	}
+}
@@ -1,7 +1,12 @@
 package grondag.fluidity.test;
 
+import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.Test;
 
+import net.minecraft.network.PacketByteBuf;
+
+import grondag.fluidity.api.fraction.FixedFraction;
+import grondag.fluidity.api.fraction.Fraction;
 import grondag.fluidity.api.fraction.MutableFraction;
 
 class FractionTest {
@@ -52,4 +57,225 @@ class FractionTest {
 		assert f.divisor() == 80;
 	}
 
+	@Test
+	void fixed() {
+		final FixedFraction f = new FixedFraction(Fraction.of(2, 1, 3), 81000);
+
+		assert f.units() == 2 * 81000 + 27000;
+		assert f.whole() == 2;
+		assert f.numerator() == 27000;
+
+		f.add(54000);
+		assert f.whole() == 3;
+		assert f.numerator() == 0;
+		assert f.toFraction().equals(Fraction.of(3));
+
+		f.subtract(new FixedFraction(1, 4));
+		assert f.toFraction().equals(Fraction.of(2, 3, 4));
+		assert f.toLong(4) == 11;
+
+		assert f.canRepresent(Fraction.of(1, 9));
+		assert !f.canRepresent(Fraction.of(1, 7));
+
+		f.setTruncated(Fraction.of(1, 7));
+		assert f.units() == 81000 / 7;
+
+		final MutableFraction m = new MutableFraction();
+		f.set(-40500).toFraction(m);
+		assert m.whole() == 0;
+		assert m.numerator() == -1;
+		assert m.divisor() == 2;
+
+		// equal values at different resolutions
+		final FixedFraction half2 = new FixedFraction(1, 2);
+		final FixedFraction half4 = new FixedFraction(2, 4);
+		assert half2.equals(half4);
+		assert half2.hashCode() == half4.hashCode();
+
+		final long big = 4_000_000_007L;
+		f.setTruncated(Fraction.of(0, big - 1, big));
+		assert f.units() == 80999;
+
+		// product exceeds 64 bits but the quotient fits
+		assert FixedFraction.multiplyDivide(big - 1, big + 1, big) == big - 1;
+		assert FixedFraction.multiplyDivide(Long.MAX_VALUE, 4, 2) == Long.MAX_VALUE;
+
+		// requests may be arbitrarily large
+		assert FixedFraction.toUnitsSaturated(Fraction.MAX_VALUE, 81000) == Long.MAX_VALUE;
+		assert FixedFraction.toUnitsSaturated(Fraction.of(-Long.MAX_VALUE), 81000) == Long.MIN_VALUE;
+		assert FixedFraction.toUnitsSaturated(Fraction.of(Long.MAX_VALUE / 2, 1, 2), 2) == Long.MAX_VALUE;
+		assert FixedFraction.toUnitsSaturated(Fraction.of(2, 1, 3), 81000) == 2 * 81000 + 27000;
+
+		boolean threw = false;
+
+		try {
+			f.set(Fraction.of(Long.MAX_VALUE / 1000));
+		} catch (final ArithmeticException e) {
+			threw = true;
+		}
+
+		assert threw;
+	}
+
+	@Test
+	void deferred() {
+		final MutableFraction f = new MutableFraction().deferNormalization(true);
+		final MutableFraction e = new MutableFraction();
+
+		for (int i = 0; i < 100; i++) {
+			f.add(1, 4);
+			f.add(2, 6);
+			f.subtract(1, 81000);
+			e.add(1, 4);
+			e.add(2, 6);
+			e.subtract(1, 81000);
+		}
+
+		assert f.equals(e);
+		assert f.whole() == e.whole();
+		assert f.numerator() == e.numerator();
+		assert f.divisor() == e.divisor();
+
+		f.set(0);
+
+		for (int i = 0; i < 12; i++) {
+			f.add(1, 3);
+			f.subtract(1, 4);
+		}
+
+		assert f.whole() == 1;
+		assert f.numerator() == 0;
+		assert f.divisor() == 1;
+
+		// divisors too large to multiply fall back to eager reduction
+		f.set(0, 1, 3_000_000_001L).add(1, 3_000_000_003L);
+		assert f.equals(e.set(0, 1, 3_000_000_001L).add(1, 3_000_000_003L));
+		assert f.divisor() == 3_000_000_001L * 3_000_000_003L;
+
+		f.set(0, 2, 4);
+		assert f.numerator() == 1;
+		assert f.divisor() == 2;
+
+		// whole part carried past a fractional part of the other sign
+		f.set(Fraction.of(-1, 3)).add(1);
+		assert f.isLessThan(Fraction.of(9, 10));
+		assert f.whole() == 0;
+		assert f.numerator() == 2;
+		assert f.divisor() == 3;
+	}
+
+	@Test
+	void overflow() {
+		final MutableFraction f = new MutableFraction(1, 3_000_000_019L);
+
+		// divisors with a common factor are scaled to their least common multiple
+		f.add(1, 6_000_000_038L);
+		assert f.numerator() == 3;
+		assert f.divisor() == 6_000_000_038L;
+
+		// coprime divisors whose product can't be represented
+		boolean threw = false;
+
+		try {
+			f.set(0, 1, 3_000_000_019L).add(1, 4_000_000_007L);
+		} catch (final ArithmeticException e) {
+			threw = true;
+		}
+
+		assert threw;
+
+		f.set(Long.MIN_VALUE / 2, -1, 3);
+		assert f.whole() == Long.MIN_VALUE / 2;
+		assert f.numerator() == -1;
+	}
+
+	@Test
+	void wide() {
+		final long big = 3_000_000_019L;
+
+		// cross products exceed 63 bits
+		final Fraction a = Fraction.of(0, big - 1, big);
+		final Fraction b = Fraction.of(0, big, big + 1);
+		assert a.isLessThan(b);
+		assert b.isGreaterThan(a);
+		assert a.compareTo(Fraction.of(0, big - 1, big)) == 0;
+
+		assert Fraction.compareProducts(Long.MAX_VALUE, 3, Long.MAX_VALUE, 2) > 0;
+		assert Fraction.compareProducts(-Long.MAX_VALUE, 3, Long.MAX_VALUE, 2) < 0;
+		assert Fraction.compareProducts(1L << 40, 1L << 40, 1L << 41, 1L << 39) == 0;
+		assert Fraction.compareProducts(3, 4, 2, 6) == 0;
+
+		final MutableFraction m = new MutableFraction(1_000_000, 1, 2);
+		m.multiply(2_000_000, 1, 2);
+		assert m.whole() == 2_000_001_500_000L;
+		assert m.numerator() == 1;
+		assert m.divisor() == 4;
+
+		// divisor product exceeds 64 bits but the operands cancel
+		final long p = (1L << 40) + 15;
+		final long q = (1L << 40) + 1;
+		m.set(0, p, q).multiply(0, q, p);
+		assert m.equals(Fraction.ONE);
+
+		// improper numerator product exceeds 64 bits but the result fits
+		m.set(1L << 40, 1, 3).multiply(1L << 20, 1, 5);
+		assert m.whole() == (1L << 60) + (1L << 40) / 5 + (1L << 20) / 3;
+		assert m.numerator() == 3;
+		assert m.divisor() == 5;
+
+		boolean threw = false;
+
+		try {
+			m.set(0, 1, 5_000_000_029L).multiply(0, 1, 5_000_000_039L);
+		} catch (final ArithmeticException e) {
+			threw = true;
+		}
+
+		assert threw;
+	}
+
+	@Test
+	void cache() {
+		assert Fraction.of(0, 0, 1) == Fraction.ZERO;
+		assert Fraction.of(3) == Fraction.of(3, 0, 1);
+		assert Fraction.of(0, 2, 4) == Fraction.of(1, 2);
+		assert Fraction.of(0, 5, 4) == Fraction.of(1, 1, 4);
+		assert Fraction.of(2, 6, 9) == Fraction.of(2, 2, 3);
+		assert Fraction.of(0, 3, 6).equals(Fraction.of(1, 2));
+		assert new MutableFraction(7, 1, 3).toImmutable() == Fraction.of(7, 1, 3);
+
+		final Fraction f = Fraction.of(5, 3, 4);
+		assert f.whole() == 5 && f.numerator() == 3 && f.divisor() == 4;
+
+		assert Fraction.of(-1).whole() == -1;
+		assert Fraction.of(Long.MAX_VALUE, 1, 2).whole() == Long.MAX_VALUE;
+		assert Fraction.of(0, Long.MAX_VALUE, 2).whole() == Long.MAX_VALUE / 2;
+	}
+
+	@Test
+	void wire() {
+		final Fraction[] values = {
+			Fraction.ZERO, Fraction.of(64), Fraction.of(-3), Fraction.of(0, 1, 3), Fraction.of(0, -1, 3),
+			Fraction.of(12, 7, 81000), Fraction.of(-5, -2, 7919), Fraction.MAX_VALUE, Fraction.of(Long.MIN_VALUE + 1, -1, 2)
+		};
+
+		for (final int version : new int[] {Fraction.WIRE_LEGACY, Fraction.WIRE_COMPACT}) {
+			final PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+
+			for (final Fraction f : values) {
+				f.writeBuffer(buf, version);
+			}
+
+			for (final Fraction f : values) {
+				assert new Fraction(buf, version).equals(f);
+			}
+
+			assert buf.readableBytes() == 0;
+		}
+
+		final PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+		Fraction.of(64).writeBuffer(buf);
+		Fraction.of(0, 1, 3).writeBuffer(buf);
+		assert buf.readableBytes() == 4;
+	}
 }
@@ -0,0 +1,21 @@
+package grondag.fluidity.test;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+
+/**
+ * Registries must be populated before articles can be created.
+ */
+final class TestBootstrap {
+	private TestBootstrap() {}
+
+	private static boolean isInitialized = false;
+
+	static synchronized void init() {
+		if (!isInitialized) {
+			SharedConstants.createGameVersion();
+			Bootstrap.initialize();
+			isInitialized = true;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package grondag.fluidity.test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.item.Items;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.transact.Transaction;
+import grondag.fluidity.base.storage.discrete.FlexibleDiscreteStore;
+import grondag.fluidity.impl.TransactionImpl;
+import grondag.fluidity.impl.TransactionQueueImpl;
+
+class TransactionTest {
+	@BeforeAll
+	static void setup() {
+		TestBootstrap.init();
+	}
+
+	@Test
+	void noOverfill() throws InterruptedException {
+		final Article stone = Article.of(Items.STONE);
+		final FlexibleDiscreteStore store = new FlexibleDiscreteStore(10);
+		store.getConsumer().apply(stone, 8, false);
+
+		final Thread main = Thread.currentThread();
+		final CountDownLatch locked = new CountDownLatch(1);
+		final AtomicBoolean requesting = new AtomicBoolean();
+
+		// test thread waits on locks instead of timing out
+		TransactionImpl.setServerThread(null);
+
+		// empties the store inside a transaction, then rolls back once the test thread is waiting
+		final Thread other = new Thread(() -> {
+			try (Transaction tx = Transaction.open()) {
+				store.getSupplier().apply(stone, 8, false);
+				locked.countDown();
+
+				while (!requesting.get() || main.getState() != Thread.State.WAITING) {
+					Thread.onSpinWait();
+				}
+			}
+		});
+
+		other.start();
+		locked.await();
+		requesting.set(true);
+
+		// free space must be read only after the other transaction releases the store
+		try (Transaction tx = Transaction.open()) {
+			assert store.getConsumer().apply(stone, 10, false) == 2;
+			tx.commit();
+		}
+
+		other.join();
+		assert store.count() == 10;
+		assert store.countOf(stone) == 10;
+	}
+
+	@Test
+	void queuedWorkUnbalanced() {
+		final Article stone = Article.of(Items.STONE);
+		final FlexibleDiscreteStore store = new FlexibleDiscreteStore(10);
+
+		final CompletableFuture<Long> committed = TransactionQueueImpl.submit(tx -> {
+			final long result = store.getConsumer().apply(stone, 3, false);
+			tx.commit();
+			return result;
+		});
+
+		// leaves a nested transaction open
+		final CompletableFuture<Long> unbalanced = TransactionQueueImpl.submit(tx -> {
+			Transaction.open();
+			return store.getConsumer().apply(stone, 4, false);
+		});
+
+		TransactionQueueImpl.tick();
+
+		assert committed.join() == 3;
+		assert unbalanced.isCompletedExceptionally();
+		assert TransactionImpl.current() == null;
+		assert store.count() == 3;
+	}
+}
@@ -0,0 +1,97 @@
+package grondag.fluidity.test;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.junit.jupiter.api.Test;
+
+import grondag.fluidity.api.article.Article;
+import grondag.fluidity.api.fraction.Fraction;
+import grondag.fluidity.api.fraction.MutableFraction;
+import grondag.fluidity.base.transact.UndoJournal;
+import grondag.fluidity.base.transact.UndoJournal.FractionReplayer;
+
+class UndoJournalTest {
+	@Test
+	void nestedReplayOrder() {
+		final LongArrayList undone = new LongArrayList();
+		final UndoJournal journal = new UndoJournal((handle, article, delta) -> undone.add(delta));
+
+		journal.enter();
+		journal.append(0, null, 1);
+
+		// committed nested entries stay in the journal for the enclosing transaction
+		journal.enter();
+		journal.append(0, null, 2);
+		journal.append(1, null, 3);
+		journal.exit(true);
+
+		// rolled back nested entries are replayed newest first, and only those
+		journal.enter();
+		journal.append(0, null, 4);
+		journal.append(1, null, 5);
+		journal.exit(false);
+		assert undone.equals(LongArrayList.wrap(new long[] {5, 4}));
+
+		undone.clear();
+		journal.append(1, null, 6);
+		journal.exit(false);
+		assert undone.equals(LongArrayList.wrap(new long[] {6, 3, 2, 1}));
+		assert !journal.isActive();
+
+		// changes made outside a transaction aren't recorded
+		undone.clear();
+		journal.append(0, null, 7);
+		journal.enter();
+		journal.exit(false);
+		assert undone.isEmpty();
+	}
+
+	@Test
+	void fractionalRollback() {
+		final MutableFraction total = new MutableFraction();
+
+		final UndoJournal journal = new UndoJournal(new FractionReplayer() {
+			@Override
+			public void undo(int handle, Article article, long delta) {
+				total.subtract(delta);
+			}
+
+			@Override
+			public void undo(int handle, Article article, Fraction delta) {
+				total.subtract(delta);
+			}
+		});
+
+		journal.enter();
+		total.add(1, 3);
+		journal.append(0, null, Fraction.of(1, 3));
+		total.add(2);
+		journal.append(0, null, 2);
+
+		journal.enter();
+		total.add(3, 4);
+		journal.append(0, null, 3, 4);
+		total.add(Fraction.of(1, 1, 6));
+		journal.append(0, null, Fraction.of(1, 1, 6));
+		journal.exit(true);
+
+		assert total.equals(Fraction.of(4, 1, 4));
+
+		journal.exit(false);
+		assert total.isZero();
+	}
+
+	@Test
+	void fractionalNeedsReplayer() {
+		final UndoJournal journal = new UndoJournal((handle, article, delta) -> { });
+		journal.enter();
+		boolean threw = false;
+
+		try {
+			journal.append(0, null, Fraction.of(1, 3));
+		} catch (final IllegalStateException e) {
+			threw = true;
+		}
+
+		assert threw;
+	}
+}